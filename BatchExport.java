@@ -0,0 +1,341 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import org.json.*;
+
+/**
+ * Headless export of current weather for a list of cities, one per line ('#' starts a
+ * comment), as CSV or newline-delimited JSON.
+ * - Cities go to the engine in batches of up to 20 through fetchManyAsync, so cities
+ *   with a known ID cost one group call per batch rather than one call each
+ * - At most -Dbatch.concurrency batches are in flight, and -Dbatch.rate caps how many
+ *   cities per second are started; the engine's own host limiter applies on top
+ * - Rows are written in input order as soon as their batch and every earlier one are
+ *   done, so memory stays bounded by the batches in flight whatever the list size
+ * - After every batch the output is flushed and a checkpoint next to it records how
+ *   many cities and bytes are complete. A rerun after an interruption truncates the
+ *   output back to that point and carries on from the next city; the checkpoint is
+ *   removed when the export finishes
+ * Cities that could not be fetched get a row with status "unavailable". Exports run at
+ * background quota priority, with no more cities in flight than the quota will queue for
+ * background work. If the quota still refuses a call, e.g. because the day's budget is
+ * nearly used up, the export stops before writing that batch, with its checkpoint in
+ * place, so it can be resumed later.
+ * <pre>
+ *   -Dbatch.format=csv|ndjson   default from the output file's extension, else csv
+ *   -Dbatch.concurrency=4       batches in flight
+ *   -Dbatch.rate=0              cities started per second, 0 for no cap
+ * </pre>
+ * Start with: java -cp .:json-20231013.jar BatchExport cities.txt weather.csv  (or - for stdout, without resume)
+ */
+final class BatchExport {
+    private static final int BATCH_SIZE = 20;
+    private static final int CONCURRENCY = Math.max(1, Integer.getInteger("batch.concurrency", 4));
+    private static final double RATE = Double.parseDouble(System.getProperty("batch.rate", "0"));
+    private static final long PROGRESS_INTERVAL_NS = TimeUnit.SECONDS.toNanos(5);
+    private static final String[] CSV_COLUMNS = {
+        "city", "status", "name", "cityId", "observedAt", "lat", "lon", "temperature", "feelsLike", "humidity",
+        "windSpeed", "pressure", "visibility", "weatherId", "description", "sunrise", "sunset"
+    };
+
+    private static final class Batch {
+        final List<String> cities;
+        final CompletableFuture<Map<String, WeatherData>> result;
+
+        Batch(List<String> cities, CompletableFuture<Map<String, WeatherData>> result) {
+            this.cities = cities;
+            this.result = result;
+        }
+    }
+
+    private final WeatherEngine engine;
+    private final Path input;
+    private final Path output; // null for stdout
+    private final Path checkpoint;
+    private final boolean ndjson;
+    private final int batchSize;
+    private final int concurrency;
+
+    private long total;
+    private long done;
+    private long unavailable;
+    private long bytes;
+    private long resumedFrom;
+    private long started;
+    private long lastProgress;
+
+    BatchExport(WeatherEngine engine, Path input, Path output, boolean ndjson) {
+        this.engine = engine;
+        this.input = input;
+        this.output = output;
+        this.checkpoint = output == null ? null : output.resolveSibling(output.getFileName() + ".checkpoint");
+        this.ndjson = ndjson;
+        // Each city in flight may wait in the quota's background queue, which sheds calls beyond its limit
+        int queueLimit = engine.quota().backgroundQueueLimit();
+        this.batchSize = Math.max(1, Math.min(BATCH_SIZE, queueLimit));
+        this.concurrency = Math.max(1, Math.min(CONCURRENCY, queueLimit / batchSize));
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: BatchExport <cities file> [output file | -]");
+            System.exit(2);
+        }
+        Path input = Paths.get(args[0]);
+        Path output = args.length > 1 && !args[1].equals("-") ? Paths.get(args[1]) : null;
+        String format = System.getProperty("batch.format",
+            output != null && output.toString().endsWith(".ndjson") ? "ndjson" : "csv");
+        if (!format.equals("csv") && !format.equals("ndjson")) {
+            System.err.println("Unknown -Dbatch.format " + format + ", expected csv or ndjson");
+            System.exit(2);
+        }
+
+        int status = 0;
+        try (WeatherStation station = new WeatherStation()) {
+            if (station.isApiKeyMissing()) {
+                System.err.println("No API key configured");
+                status = 1;
+            } else {
+                new BatchExport(station, input, output, format.equals("ndjson")).run();
+            }
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            status = 1;
+        }
+        System.exit(status);
+    }
+
+    void run() throws IOException {
+        total = countCities();
+        long skip = restoreCheckpoint();
+        done = resumedFrom = skip;
+        started = lastProgress = System.nanoTime();
+        if (skip > 0) {
+            System.err.printf("Resuming after %d of %d cities%n", skip, total);
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8);
+             Writer out = openOutput(skip > 0)) {
+            if (bytes == 0 && !ndjson) {
+                write(out, csvRow(CSV_COLUMNS));
+            }
+            Deque<Batch> inFlight = new ArrayDeque<>();
+            long nextStart = System.nanoTime();
+            long skipped = 0;
+            List<String> cities = new ArrayList<>(batchSize);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String city = cityOf(line);
+                if (city == null) continue;
+                if (skipped < skip) {
+                    skipped++;
+                    continue;
+                }
+                cities.add(city);
+                if (cities.size() == batchSize) {
+                    nextStart = start(cities, inFlight, out, nextStart);
+                    cities = new ArrayList<>(batchSize);
+                }
+            }
+            if (!cities.isEmpty()) {
+                start(cities, inFlight, out, nextStart);
+            }
+            while (!inFlight.isEmpty()) {
+                complete(inFlight.removeFirst(), out);
+            }
+        }
+        if (checkpoint != null) {
+            Files.deleteIfExists(checkpoint);
+        }
+        report();
+        System.err.println("Done" + (output != null ? ": " + output : ""));
+    }
+
+    /** Waits for a free slot and the rate limit, then hands cities to the engine; returns the next start time. */
+    private long start(List<String> cities, Deque<Batch> inFlight, Writer out, long nextStart) throws IOException {
+        while (inFlight.size() >= concurrency) {
+            complete(inFlight.removeFirst(), out);
+        }
+        if (RATE > 0) {
+            long wait = nextStart - System.nanoTime();
+            if (wait > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted", e);
+                }
+            }
+            nextStart = Math.max(nextStart, System.nanoTime()) + (long) (cities.size() * 1e9 / RATE);
+        }
+        if (!engine.quota().acceptsBackground()) {
+            throw new IOException("Stopped after " + done + " of " + total
+                                  + " cities: the API quota for today is nearly used up; run again tomorrow to resume");
+        }
+        inFlight.addLast(new Batch(cities, engine.fetchManyAsync(cities, QuotaLimiter.Priority.BACKGROUND)));
+        return nextStart;
+    }
+
+    /**
+     * Writes a finished batch in input order, then moves the checkpoint past it. A batch the
+     * quota refused ends the export without being written, so a rerun fetches it again.
+     */
+    private void complete(Batch batch, Writer out) throws IOException {
+        Map<String, WeatherData> results;
+        try {
+            results = batch.result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof QuotaExceededException) {
+                throw new IOException("Stopped after " + done + " of " + total + " cities: " + e.getCause().getMessage()
+                                      + "; run again later to resume", e.getCause());
+            }
+            results = Collections.emptyMap();
+        }
+        for (String city : batch.cities) {
+            WeatherData data = results.get(city);
+            if (data == null) {
+                unavailable++;
+            }
+            write(out, ndjson ? ndjsonRow(city, data) : csvRow(csvFields(city, data)));
+            done++;
+        }
+        out.flush();
+        saveCheckpoint();
+        if (System.nanoTime() - lastProgress >= PROGRESS_INTERVAL_NS) {
+            report();
+            lastProgress = System.nanoTime();
+        }
+    }
+
+    private void write(Writer out, String row) throws IOException {
+        out.write(row);
+        bytes += row.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private void report() {
+        double seconds = (System.nanoTime() - started) / 1e9;
+        double perSecond = seconds > 0 ? (done - resumedFrom) / seconds : 0;
+        long left = total - done;
+        System.err.printf("%d/%d cities (%.0f%%), %.1f/s, %d unavailable%s%n",
+            done, total, total > 0 ? done * 100.0 / total : 100, perSecond, unavailable,
+            left > 0 && perSecond > 0 ? String.format(", about %ds left", (long) (left / perSecond)) : "");
+    }
+
+    private long countCities() throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8)) {
+            return reader.lines().filter(line -> cityOf(line) != null).count();
+        }
+    }
+
+    private static String cityOf(String line) {
+        int hash = line.indexOf('#');
+        String city = (hash < 0 ? line : line.substring(0, hash)).trim();
+        return city.isEmpty() ? null : city;
+    }
+
+    /** Cities already exported by an interrupted run, with the output cut back to match; 0 to start over. */
+    private long restoreCheckpoint() throws IOException {
+        if (checkpoint == null || !Files.exists(checkpoint) || !Files.exists(output)) return 0;
+        try {
+            JSONObject saved = new JSONObject(Files.readString(checkpoint));
+            if (!saved.getString("input").equals(input.toAbsolutePath().toString())
+                || saved.getBoolean("ndjson") != ndjson
+                || saved.getLong("bytes") > Files.size(output)) {
+                System.err.println("Checkpoint does not match this export, starting over");
+                return 0;
+            }
+            bytes = saved.getLong("bytes");
+            unavailable = saved.optLong("unavailable");
+            try (FileChannel channel = FileChannel.open(output, StandardOpenOption.WRITE)) {
+                channel.truncate(bytes);
+            }
+            return saved.getLong("done");
+        } catch (JSONException e) {
+            System.err.println("Unreadable checkpoint, starting over: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    private void saveCheckpoint() throws IOException {
+        if (checkpoint == null) return;
+        JSONObject state = new JSONObject()
+            .put("input", input.toAbsolutePath().toString())
+            .put("ndjson", ndjson)
+            .put("done", done)
+            .put("bytes", bytes)
+            .put("unavailable", unavailable);
+        Path temp = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+        Files.writeString(temp, state.toString());
+        Files.move(temp, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Writer openOutput(boolean append) throws IOException {
+        if (output == null) {
+            return new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        }
+        if (!append) {
+            bytes = 0;
+            unavailable = 0;
+        }
+        return Files.newBufferedWriter(output, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    private static String ndjsonRow(String city, WeatherData data) {
+        JSONObject row = data == null
+            ? new JSONObject().put("city", city).put("status", "unavailable")
+            : WeatherServer.weatherJson(city, data).put("status", "ok").put("name", data.name);
+        return row + "\n";
+    }
+
+    private static String[] csvFields(String city, WeatherData data) {
+        if (data == null) {
+            String[] fields = new String[CSV_COLUMNS.length];
+            fields[0] = city;
+            fields[1] = "unavailable";
+            return fields;
+        }
+        boolean located = !Double.isNaN(data.lat) && !Double.isNaN(data.lon);
+        return new String[] {
+            city, "ok", data.name, String.valueOf(data.cityId), String.valueOf(data.observedAt),
+            located ? String.valueOf(data.lat) : null, located ? String.valueOf(data.lon) : null,
+            String.valueOf(data.temperature), String.valueOf(data.feelsLike), String.valueOf(data.humidity),
+            String.valueOf(data.windSpeed), String.valueOf(data.pressure), String.valueOf(data.visibility),
+            String.valueOf(data.weatherId), data.description, data.sunrise, data.sunset
+        };
+    }
+
+    /** RFC 4180: fields with a comma, quote or line break are quoted, quotes doubled; null is empty. */
+    private static String csvRow(String[] fields) {
+        StringBuilder row = new StringBuilder();
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) row.append(',');
+            String field = fields[i];
+            if (field == null) continue;
+            if (field.indexOf(',') >= 0 || field.indexOf('"') >= 0 || field.indexOf('\n') >= 0 || field.indexOf('\r') >= 0) {
+                row.append('"').append(field.replace("\"", "\"\"")).append('"');
+            } else {
+                row.append(field);
+            }
+        }
+        return row.append("\r\n").toString();
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * Circuit breaker for one upstream endpoint.
+ * - Closed: calls go through; the outcomes of the last WINDOW calls are kept, and once
+ *   at least MIN_CALLS of them are in and half or more failed, the breaker opens
+ * - Open: calls are refused without touching the network until openMillis have passed
+ * - Half-open: a single trial call goes through; its success closes the breaker, its
+ *   failure opens it again
+ * Only upstream trouble (5xx, 429, timeouts, connection errors) counts as a failure; a
+ * 404 is a healthy answer.
+ */
+final class CircuitBreaker {
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private static final int WINDOW = 20;
+    private static final int MIN_CALLS = 10;
+
+    private final long openMillis;
+    private final boolean[] failed = new boolean[WINDOW];
+    private int next;
+    private int recorded;
+    private int failures;
+    private State state = State.CLOSED;
+    private long openedAt;
+    private boolean trialInFlight;
+    private long timesOpened;
+
+    CircuitBreaker(long openMillis) {
+        this.openMillis = openMillis;
+    }
+
+    /** True if a call may go out now; a caller that gets true must report its outcome. */
+    synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.currentTimeMillis() - openedAt < openMillis) return false;
+                state = State.HALF_OPEN;
+                trialInFlight = true;
+                return true;
+            default:
+                if (trialInFlight) return false;
+                trialInFlight = true;
+                return true;
+        }
+    }
+
+    synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            close();
+        } else if (state == State.CLOSED) {
+            record(false);
+        }
+    }
+
+    synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            open();
+        } else if (state == State.CLOSED) {
+            record(true);
+            if (recorded >= MIN_CALLS && failures * 2 >= recorded) {
+                open();
+            }
+        }
+    }
+
+    /** The call was abandoned before it said anything about the upstream. */
+    synchronized void onCancelled() {
+        if (state == State.HALF_OPEN) {
+            trialInFlight = false;
+        }
+    }
+
+    synchronized State state() {
+        return state;
+    }
+
+    synchronized long timesOpened() {
+        return timesOpened;
+    }
+
+    /** How long until an open breaker lets a trial call through; 0 unless open. */
+    synchronized long millisUntilTrial() {
+        return state == State.OPEN ? Math.max(0, openedAt + openMillis - System.currentTimeMillis()) : 0;
+    }
+
+    private void record(boolean failure) {
+        if (recorded == WINDOW) {
+            if (failed[next]) failures--;
+        } else {
+            recorded++;
+        }
+        failed[next] = failure;
+        if (failure) failures++;
+        next = (next + 1) % WINDOW;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.currentTimeMillis();
+        trialInFlight = false;
+        timesOpened++;
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        trialInFlight = false;
+        recorded = 0;
+        failures = 0;
+        next = 0;
+    }
+}
@@ -0,0 +1,11 @@
+import java.io.IOException;
+
+/** A call refused without being sent because the endpoint's circuit breaker is open. */
+class CircuitOpenException extends IOException {
+    final String endpoint;
+
+    CircuitOpenException(String endpoint, long retryInMillis) {
+        super(endpoint + " endpoint unavailable, next try in " + Math.max(1, retryInMillis / 1000) + "s");
+        this.endpoint = endpoint;
+    }
+}
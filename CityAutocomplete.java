@@ -0,0 +1,152 @@
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.*;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Drop-down of matching cities under a search field, filled from the local city
+ * index on every keystroke. Up/Down move through the list, Enter or a click picks
+ * a city (which is then searched), Escape closes it. Without a city index the
+ * source returns nothing and the field behaves as before.
+ */
+class CityAutocomplete {
+    private static final int MAX_ROWS = 8;
+    private static final Font ROW_FONT = new Font("Segoe UI", Font.PLAIN, 13);
+
+    private final JTextField field;
+    private final Function<String, List<CityIndex.City>> source;
+    private final Consumer<String> onChoose;
+    private final DefaultListModel<CityIndex.City> model = new DefaultListModel<>();
+    private final JList<CityIndex.City> list = new JList<>(model);
+    private final JPopupMenu popup = new JPopupMenu();
+    private boolean adjusting;
+
+    CityAutocomplete(JTextField field, Function<String, List<CityIndex.City>> source, Consumer<String> onChoose) {
+        this.field = field;
+        this.source = source;
+        this.onChoose = onChoose;
+
+        list.setFont(ROW_FONT);
+        list.setFocusable(false);
+        list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        list.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int row = list.locationToIndex(e.getPoint());
+                if (row >= 0) choose(model.get(row));
+            }
+        });
+        popup.setFocusable(false);
+        popup.setBorder(BorderFactory.createLineBorder(new Color(200, 220, 240)));
+        popup.add(new JScrollPane(list, ScrollPaneConstants.VERTICAL_SCROLLBAR_NEVER,
+                                  ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER));
+
+        field.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                changed();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                changed();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+        // Runs before the field's own Enter action, so a picked row wins over the typed text
+        field.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                if (!popup.isVisible()) return;
+                switch (e.getKeyCode()) {
+                    case KeyEvent.VK_DOWN:
+                        move(1);
+                        e.consume();
+                        break;
+                    case KeyEvent.VK_UP:
+                        move(-1);
+                        e.consume();
+                        break;
+                    case KeyEvent.VK_ENTER:
+                        if (list.getSelectedIndex() >= 0) {
+                            choose(list.getSelectedValue());
+                            e.consume();
+                        } else {
+                            popup.setVisible(false);
+                        }
+                        break;
+                    case KeyEvent.VK_ESCAPE:
+                        popup.setVisible(false);
+                        e.consume();
+                        break;
+                    default:
+                        break;
+                }
+            }
+        });
+    }
+
+    /** Replaces the field text without opening the list, e.g. after a search completes. */
+    void setText(String text) {
+        adjusting = true;
+        try {
+            field.setText(text);
+        } finally {
+            adjusting = false;
+        }
+        popup.setVisible(false);
+    }
+
+    private void changed() {
+        // Text set by the program (or while the user is elsewhere) does not open the list
+        if (adjusting || !field.isFocusOwner()) return;
+        // Document listeners must not touch the document or its views; update afterwards
+        SwingUtilities.invokeLater(this::refresh);
+    }
+
+    private void refresh() {
+        String text = field.getText();
+        List<CityIndex.City> matches = text.trim().length() < 2 ? List.of() : source.apply(text);
+        model.clear();
+        if (matches.isEmpty()) {
+            popup.setVisible(false);
+            return;
+        }
+        for (int i = 0; i < matches.size() && i < MAX_ROWS; i++) {
+            model.addElement(matches.get(i));
+        }
+        list.setVisibleRowCount(model.size());
+        list.clearSelection();
+        popup.setPreferredSize(null);
+        Dimension size = popup.getPreferredSize();
+        popup.setPreferredSize(new Dimension(Math.max(field.getWidth(), size.width), size.height));
+        popup.pack();
+        if (!popup.isVisible()) {
+            popup.show(field, 0, field.getHeight());
+        }
+        field.requestFocusInWindow();
+    }
+
+    private void move(int delta) {
+        int row = list.getSelectedIndex() + delta;
+        if (row < 0) row = model.size() - 1;
+        if (row >= model.size()) row = 0;
+        list.setSelectedIndex(row);
+        list.ensureIndexIsVisible(row);
+    }
+
+    private void choose(CityIndex.City city) {
+        setText(city.toString());
+        onChoose.accept(city.toString());
+    }
+}
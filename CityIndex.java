@@ -0,0 +1,403 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.Normalizer;
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * In-process index of OpenWeatherMap's bulk city list (city.list.json or .json.gz,
+ * from bulk.openweathermap.org/sample/), so searches can be checked, completed and
+ * resolved to city IDs without a network call.
+ *
+ * Names are keyed lowercase without accents and kept sorted in one packed char
+ * array with an offset table, which serves prefix ranges by binary search
+ * (about 30 bytes per city plus the name itself, instead of ~200k String objects).
+ * Typo-tolerant lookup runs a bounded edit distance over the keys that share the
+ * query's first letter.
+ *
+ * The list is read from -Dweather.cityList, else city.list.json(.gz) in the cache
+ * directory; without one the index is empty and searches go to the API as before.
+ */
+final class CityIndex {
+    static final class City {
+        final int id;
+        final String name;
+        final String country;
+        final float lat;
+        final float lon;
+
+        City(int id, String name, String country, float lat, float lon) {
+            this.id = id;
+            this.name = name;
+            this.country = country;
+            this.lat = lat;
+            this.lon = lon;
+        }
+
+        /** "London, GB": what the search field shows and the API accepts as q=. */
+        @Override
+        public String toString() {
+            return country.isEmpty() ? name : name + ", " + country;
+        }
+    }
+
+    static final CityIndex EMPTY = new CityIndex(new char[0], new int[1], new char[0], new int[1],
+                                                 new int[0], new char[0], new float[0], new float[0]);
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+    // Entry i, in key order: key chars [keyStart[i], keyStart[i + 1]), likewise for the display name
+    private final char[] keyChars;
+    private final int[] keyStart;
+    private final char[] nameChars;
+    private final int[] nameStart;
+    private final int[] ids;
+    private final char[] countries; // two chars per entry, blank if unknown
+    private final float[] lat;
+    private final float[] lon;
+
+    private CityIndex(char[] keyChars, int[] keyStart, char[] nameChars, int[] nameStart,
+                      int[] ids, char[] countries, float[] lat, float[] lon) {
+        this.keyChars = keyChars;
+        this.keyStart = keyStart;
+        this.nameChars = nameChars;
+        this.nameStart = nameStart;
+        this.ids = ids;
+        this.countries = countries;
+        this.lat = lat;
+        this.lon = lon;
+    }
+
+    /** Loads the configured city list, or returns EMPTY if there is none or it cannot be read. */
+    static CityIndex openDefault() {
+        String configured = System.getProperty("weather.cityList");
+        List<Path> candidates = new ArrayList<>();
+        if (configured != null) {
+            candidates.add(Paths.get(configured));
+        } else {
+            String dir = System.getProperty("weather.cacheDir",
+                                            System.getProperty("user.home") + File.separator + ".weather-station");
+            candidates.add(Paths.get(dir, "city.list.json.gz"));
+            candidates.add(Paths.get(dir, "city.list.json"));
+        }
+        for (Path file : candidates) {
+            if (!Files.isReadable(file)) continue;
+            try {
+                long start = System.nanoTime();
+                CityIndex index = load(file);
+                System.err.println("City index: " + index.size() + " cities from " + file + " in "
+                                   + (System.nanoTime() - start) / 1_000_000 + " ms");
+                return index;
+            } catch (IOException | RuntimeException e) {
+                System.err.println("City index unavailable: " + file + " (" + e + ")");
+            }
+        }
+        return EMPTY;
+    }
+
+    /** Streams a city list (gzip if the name ends in .gz) into a new index. */
+    static CityIndex load(Path file) throws IOException {
+        try (InputStream raw = new BufferedInputStream(Files.newInputStream(file), 1 << 16)) {
+            InputStream in = file.getFileName().toString().endsWith(".gz") ? new GZIPInputStream(raw, 1 << 16) : raw;
+            return read(new InputStreamReader(in, StandardCharsets.UTF_8));
+        }
+    }
+
+    static CityIndex read(Reader reader) throws IOException {
+        JsonPullParser p = new JsonPullParser(reader);
+        if (p.next() != JsonPullParser.Token.BEGIN_ARRAY) {
+            throw new IOException("City list is not a JSON array");
+        }
+        List<City> cities = new ArrayList<>(210_000);
+        while (p.next() == JsonPullParser.Token.BEGIN_OBJECT) {
+            int id = 0;
+            String name = null;
+            String country = "";
+            float cityLat = 0, cityLon = 0;
+            while (p.next() == JsonPullParser.Token.NAME) {
+                if (p.textEquals("id")) {
+                    p.next();
+                    id = (int) p.longValue();
+                } else if (p.textEquals("name")) {
+                    p.next();
+                    name = p.text();
+                } else if (p.textEquals("country")) {
+                    p.next();
+                    country = p.text();
+                } else if (p.textEquals("coord")) {
+                    p.next(); // {
+                    while (p.next() == JsonPullParser.Token.NAME) {
+                        boolean isLat = p.textEquals("lat");
+                        boolean isLon = p.textEquals("lon");
+                        p.next();
+                        if (isLat) cityLat = (float) p.doubleValue();
+                        else if (isLon) cityLon = (float) p.doubleValue();
+                    }
+                } else {
+                    p.skipValue();
+                }
+            }
+            if (id != 0 && name != null && !name.isEmpty()) {
+                cities.add(new City(id, name, country, cityLat, cityLon));
+            }
+        }
+        return build(cities);
+    }
+
+    private static CityIndex build(List<City> cities) {
+        int n = cities.size();
+        String[] keys = new String[n];
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = key(cities.get(i).name);
+            order[i] = i;
+        }
+        // Key order; equal names by country, then ID, so results are stable
+        Arrays.sort(order, Comparator.<Integer, String>comparing(i -> keys[i])
+                                     .thenComparing(i -> cities.get(i).country)
+                                     .thenComparingInt(i -> cities.get(i).id));
+
+        int keyLength = 0, nameLength = 0;
+        for (int i = 0; i < n; i++) {
+            keyLength += keys[i].length();
+            nameLength += cities.get(i).name.length();
+        }
+        char[] keyChars = new char[keyLength];
+        char[] nameChars = new char[nameLength];
+        int[] keyStart = new int[n + 1];
+        int[] nameStart = new int[n + 1];
+        int[] ids = new int[n];
+        char[] countries = new char[2 * n];
+        float[] lat = new float[n];
+        float[] lon = new float[n];
+        int k = 0, m = 0;
+        for (int j = 0; j < n; j++) {
+            int i = order[j];
+            City c = cities.get(i);
+            keyStart[j] = k;
+            keys[i].getChars(0, keys[i].length(), keyChars, k);
+            k += keys[i].length();
+            nameStart[j] = m;
+            c.name.getChars(0, c.name.length(), nameChars, m);
+            m += c.name.length();
+            ids[j] = c.id;
+            countries[2 * j] = c.country.length() > 0 ? c.country.charAt(0) : ' ';
+            countries[2 * j + 1] = c.country.length() > 1 ? c.country.charAt(1) : ' ';
+            lat[j] = c.lat;
+            lon[j] = c.lon;
+        }
+        keyStart[n] = k;
+        nameStart[n] = m;
+        return new CityIndex(keyChars, keyStart, nameChars, nameStart, ids, countries, lat, lon);
+    }
+
+    /** Lookup key of a name: accents stripped, lowercased, whitespace collapsed. */
+    static String key(String name) {
+        // Most names are plain ASCII; only the rest pay for Unicode decomposition
+        StringBuilder key = new StringBuilder(name.length());
+        boolean space = false;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c >= 0x80) {
+                String stripped = MARKS.matcher(Normalizer.normalize(name, Normalizer.Form.NFD)).replaceAll("");
+                return ResponseCache.normalize(stripped);
+            }
+            if (Character.isWhitespace(c)) {
+                space = key.length() > 0;
+            } else {
+                if (space) key.append(' ');
+                space = false;
+                key.append(c >= 'A' && c <= 'Z' ? (char) (c + 32) : c);
+            }
+        }
+        return key.toString();
+    }
+
+    int size() {
+        return ids.length;
+    }
+
+    boolean isEmpty() {
+        return ids.length == 0;
+    }
+
+    City get(int i) {
+        String country = new String(countries, 2 * i, 2).trim();
+        return new City(ids[i], new String(nameChars, nameStart[i], nameStart[i + 1] - nameStart[i]),
+                        country, lat[i], lon[i]);
+    }
+
+    /**
+     * Cities whose name starts with prefix, in name order, at most limit of them.
+     * A trailing ", CC" narrows the result to one country.
+     */
+    List<City> complete(String prefix, int limit) {
+        Query q = Query.parse(prefix);
+        List<City> out = new ArrayList<>(Math.min(limit, 16));
+        if (q.key.isEmpty()) return out;
+        for (int i = lowerBound(q.key); i < size() && out.size() < limit && startsWith(i, q.key); i++) {
+            if (q.matchesCountry(countries, i)) out.add(get(i));
+        }
+        return out;
+    }
+
+    /** All cities named exactly like query (ignoring case and accents), honouring a ", CC" suffix. */
+    List<City> matches(String query) {
+        Query q = Query.parse(query);
+        List<City> out = new ArrayList<>(4);
+        if (q.key.isEmpty()) return out;
+        for (int i = lowerBound(q.key); i < size() && compareKey(i, q.key) == 0; i++) {
+            if (q.matchesCountry(countries, i)) out.add(get(i));
+        }
+        return out;
+    }
+
+    /** True if some city has the name before the query's first comma, whatever state or country follows it. */
+    boolean containsName(String query) {
+        if (query == null) return false;
+        int comma = query.indexOf(',');
+        String key = key(comma < 0 ? query : query.substring(0, comma));
+        if (key.isEmpty()) return false;
+        int i = lowerBound(key);
+        return i < size() && compareKey(i, key) == 0;
+    }
+
+    /**
+     * Closest names to a misspelt query: at most 1 edit for short names and 2 otherwise
+     * (insert, delete, replace or swap two neighbours), best first, one entry per name.
+     */
+    List<City> suggest(String query, int limit) {
+        Query q = Query.parse(query);
+        String key = q.key;
+        if (key.isEmpty() || isEmpty()) return Collections.emptyList();
+        int maxDistance = key.length() <= 4 ? 1 : 2;
+
+        // Candidates share the first letter; typos there are rare and it bounds the scan
+        String first = key.substring(0, 1);
+        int from = lowerBound(first);
+        int to = lowerBound(String.valueOf((char) (key.charAt(0) + 1)));
+        int[][] rows = new int[3][key.length() + 1];
+        List<int[]> found = new ArrayList<>(); // {entry, distance}
+        for (int i = from; i < to; i++) {
+            int length = keyStart[i + 1] - keyStart[i];
+            if (Math.abs(length - key.length()) > maxDistance) continue;
+            if (q.country == null && i > from && sameKey(i, i - 1)) continue; // same name, other country
+            int d = boundedDistance(i, key, maxDistance, rows);
+            if (d <= maxDistance && q.matchesCountry(countries, i)) {
+                found.add(new int[] {i, d});
+            }
+        }
+        // Fewest edits first; among equals, the longest shared prefix (people mistype the middle)
+        found.sort(Comparator.<int[]>comparingInt(e -> e[1])
+                             .thenComparingInt(e -> -sharedPrefix(e[0], key))
+                             .thenComparingInt(e -> e[0]));
+        List<City> out = new ArrayList<>(Math.min(limit, found.size()));
+        for (int j = 0; j < found.size() && j < limit; j++) {
+            out.add(get(found.get(j)[0]));
+        }
+        return out;
+    }
+
+    /**
+     * Edit distance (with adjacent swaps) between entry i's key and key, or max + 1 as
+     * soon as it must exceed max. rows is scratch space: three rows of key.length() + 1.
+     */
+    private int boundedDistance(int i, String key, int max, int[][] rows) {
+        int start = keyStart[i], length = keyStart[i + 1] - start;
+        int[] beforePrev = rows[0], prev = rows[1], row = rows[2];
+        for (int j = 0; j <= key.length(); j++) prev[j] = j;
+        for (int a = 1; a <= length; a++) {
+            row[0] = a;
+            int rowMin = a;
+            char c = keyChars[start + a - 1];
+            for (int j = 1; j <= key.length(); j++) {
+                int cost = c == key.charAt(j - 1) ? 0 : 1;
+                int d = Math.min(Math.min(row[j - 1] + 1, prev[j] + 1), prev[j - 1] + cost);
+                if (a > 1 && j > 1 && c == key.charAt(j - 2) && keyChars[start + a - 2] == key.charAt(j - 1)) {
+                    d = Math.min(d, beforePrev[j - 2] + 1);
+                }
+                row[j] = d;
+                rowMin = Math.min(rowMin, d);
+            }
+            if (rowMin > max) return max + 1;
+            int[] t = beforePrev;
+            beforePrev = prev;
+            prev = row;
+            row = t;
+        }
+        return prev[key.length()];
+    }
+
+    private int sharedPrefix(int i, String key) {
+        int start = keyStart[i], n = Math.min(keyStart[i + 1] - start, key.length()), j = 0;
+        while (j < n && keyChars[start + j] == key.charAt(j)) j++;
+        return j;
+    }
+
+    /** First entry whose key is >= key. */
+    private int lowerBound(String key) {
+        int lo = 0, hi = size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareKey(mid, key) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private int compareKey(int i, String key) {
+        int start = keyStart[i], length = keyStart[i + 1] - start;
+        int n = Math.min(length, key.length());
+        for (int j = 0; j < n; j++) {
+            int d = keyChars[start + j] - key.charAt(j);
+            if (d != 0) return d;
+        }
+        return length - key.length();
+    }
+
+    private boolean sameKey(int a, int b) {
+        return Arrays.equals(keyChars, keyStart[a], keyStart[a + 1], keyChars, keyStart[b], keyStart[b + 1]);
+    }
+
+    private boolean startsWith(int i, String prefix) {
+        int start = keyStart[i];
+        if (keyStart[i + 1] - start < prefix.length()) return false;
+        for (int j = 0; j < prefix.length(); j++) {
+            if (keyChars[start + j] != prefix.charAt(j)) return false;
+        }
+        return true;
+    }
+
+    /** A search split into its name key and an optional two-letter country after a comma. */
+    private static final class Query {
+        final String key;
+        final String country; // upper case, or null
+
+        private Query(String key, String country) {
+            this.key = key;
+            this.country = country;
+        }
+
+        static Query parse(String text) {
+            if (text == null) return new Query("", null);
+            int comma = text.lastIndexOf(',');
+            if (comma >= 0) {
+                String cc = text.substring(comma + 1).trim();
+                if (cc.length() == 2 && Character.isLetter(cc.charAt(0)) && Character.isLetter(cc.charAt(1))) {
+                    cc = cc.toUpperCase(Locale.ROOT);
+                    // The API takes "London,uk" too, but the list uses the ISO code
+                    return new Query(key(text.substring(0, comma)), cc.equals("UK") ? "GB" : cc);
+                }
+            }
+            return new Query(key(text), null);
+        }
+
+        boolean matchesCountry(char[] countries, int i) {
+            return country == null || (countries[2 * i] == country.charAt(0) && countries[2 * i + 1] == country.charAt(1));
+        }
+    }
+}
@@ -0,0 +1,161 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Persistent store of the last raw JSON payload per key, so a restart can paint
+ * immediately from disk and revalidate in the background.
+ * The file is an append-only log of records:
+ *   [UTF key][long savedAtMillis][int length][payload bytes]
+ * On open the log is replayed (last record per key wins) and a torn tail from a
+ * crash is truncated. Once superseded records dominate the file it is compacted
+ * by rewriting the live records to a temp file and atomically swapping it in.
+ */
+final class DiskCache {
+    static final class Record {
+        final long savedAt;
+        final byte[] payload;
+
+        Record(long savedAt, byte[] payload) {
+            this.savedAt = savedAt;
+            this.payload = payload;
+        }
+
+        int sizeOnDisk(String key) {
+            return 2 + modifiedUtf8Length(key) + 8 + 4 + payload.length;
+        }
+    }
+
+    private static final long COMPACT_MIN_BYTES = 256 * 1024;
+    private static final int COMPACT_RATIO = 4;
+
+    private final Path file;
+    private final Map<String, Record> records = new HashMap<>();
+    private long fileBytes;
+    private long liveBytes;
+    private DataOutputStream out;
+
+    private DiskCache(Path file) {
+        this.file = file;
+    }
+
+    /** Opens the cache under ~/.weather-station (or -Dweather.cacheDir); falls back to memory only on error. */
+    static DiskCache openDefault() {
+        String dir = System.getProperty("weather.cacheDir",
+                                        System.getProperty("user.home") + File.separator + ".weather-station");
+        DiskCache cache = new DiskCache(Paths.get(dir, "responses.log"));
+        try {
+            Files.createDirectories(cache.file.getParent());
+            cache.replay();
+        } catch (IOException e) {
+            System.err.println("Disk cache disabled: " + e.getMessage());
+            cache.closeQuietly();
+            return new DiskCache(null);
+        }
+        return cache;
+    }
+
+    synchronized Record get(String key) {
+        return records.get(key);
+    }
+
+    synchronized void put(String key, byte[] payload) {
+        Record previous = records.get(key);
+        Record record = new Record(System.currentTimeMillis(), payload);
+        records.put(key, record);
+        liveBytes += record.sizeOnDisk(key) - (previous != null ? previous.sizeOnDisk(key) : 0);
+        if (out == null) return;
+        try {
+            writeRecord(out, key, record);
+            out.flush();
+            fileBytes += record.sizeOnDisk(key);
+            if (fileBytes > COMPACT_MIN_BYTES && fileBytes > liveBytes * COMPACT_RATIO) {
+                compact();
+            }
+        } catch (IOException e) {
+            System.err.println("Disk cache write failed, disabling: " + e.getMessage());
+            closeQuietly();
+        }
+    }
+
+    private void replay() throws IOException {
+        long good = 0;
+        if (Files.exists(file)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                while (true) {
+                    String key;
+                    try {
+                        key = in.readUTF();
+                        long savedAt = in.readLong();
+                        int length = in.readInt();
+                        if (length < 0) break;
+                        byte[] payload = new byte[length];
+                        in.readFully(payload);
+                        Record record = new Record(savedAt, payload);
+                        Record previous = records.put(key, record);
+                        liveBytes += record.sizeOnDisk(key) - (previous != null ? previous.sizeOnDisk(key) : 0);
+                        good += record.sizeOnDisk(key);
+                    } catch (EOFException | UTFDataFormatException e) {
+                        break; // torn tail from an interrupted write
+                    }
+                }
+            }
+            if (good < Files.size(file)) {
+                try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+                    raf.setLength(good);
+                }
+            }
+        }
+        fileBytes = good;
+        out = openAppend();
+    }
+
+    private void compact() throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream tmpOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            for (Map.Entry<String, Record> e : records.entrySet()) {
+                writeRecord(tmpOut, e.getKey(), e.getValue());
+            }
+        }
+        out.close();
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        fileBytes = liveBytes;
+        out = openAppend();
+    }
+
+    private DataOutputStream openAppend() throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file.toFile(), true)));
+    }
+
+    /** Byte length of key as written by {@link DataOutputStream#writeUTF(String)}. */
+    private static int modifiedUtf8Length(String key) {
+        int length = 0;
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            length += (c >= 0x0001 && c <= 0x007F) ? 1 : (c <= 0x07FF ? 2 : 3);
+        }
+        return length;
+    }
+
+    private static void writeRecord(DataOutputStream out, String key, Record record) throws IOException {
+        out.writeUTF(key);
+        out.writeLong(record.savedAt);
+        out.writeInt(record.payload.length);
+        out.write(record.payload);
+    }
+
+    private void closeQuietly() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException ignored) {
+                // nothing left to do
+            }
+            out = null;
+        }
+    }
+}
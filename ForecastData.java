@@ -0,0 +1,19 @@
+/** One representative forecast point per day, as shown in the 5-day strip. */
+class ForecastData {
+    String day;
+    double temp;
+    int weatherId;
+    double low, high; // the day's minimum and maximum over all its 3-hourly points
+
+    public ForecastData(String day, double temp, int weatherId) {
+        this(day, temp, weatherId, temp, temp);
+    }
+
+    public ForecastData(String day, double temp, int weatherId, double low, double high) {
+        this.day = day;
+        this.temp = temp;
+        this.weatherId = weatherId;
+        this.low = low;
+        this.high = high;
+    }
+}
@@ -0,0 +1,137 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Streams a /forecast payload into a ForecastSeries without building a JSON tree.
+ * From each 3-hourly entry only dt, main.temp, main.humidity, wind.speed, pop and
+ * weather[0].id are read, plus city.timezone; everything else is skipped as it is read.
+ */
+final class ForecastParser {
+    private ForecastParser() {
+    }
+
+    /** The 5-day strip; null for an error payload (cod != 200) or a payload without entries. */
+    static List<ForecastData> parse(InputStream in) throws IOException {
+        ForecastSeries series = parseSeries(in);
+        return series != null ? series.daily() : null;
+    }
+
+    /** All points of the payload; null for an error payload or a payload without entries. */
+    static ForecastSeries parseSeries(InputStream in) throws IOException {
+        JsonPullParser p = new JsonPullParser(new InputStreamReader(in, StandardCharsets.UTF_8));
+        if (p.next() != JsonPullParser.Token.BEGIN_OBJECT) {
+            throw new IOException("Forecast payload is not a JSON object");
+        }
+
+        // The JVM's zone until "city" (which follows "list") says otherwise
+        ForecastSeries series = new ForecastSeries(40, TimeZone.getDefault().getOffset(System.currentTimeMillis()) / 1000);
+        while (p.next() == JsonPullParser.Token.NAME) {
+            if (p.textEquals("cod")) {
+                p.next();
+                if (!p.textEquals("200")) return null;
+            } else if (p.textEquals("list")) {
+                readList(p, series);
+            } else if (p.textEquals("city")) {
+                readCity(p, series);
+            } else {
+                p.skipValue();
+            }
+        }
+        return series.size() > 0 ? series.seal() : null;
+    }
+
+    private static void readList(JsonPullParser p, ForecastSeries series) throws IOException {
+        if (p.next() != JsonPullParser.Token.BEGIN_ARRAY) {
+            throw new IOException("Forecast list is not an array");
+        }
+        float[] main = new float[2]; // temp, humidity
+        while (p.next() == JsonPullParser.Token.BEGIN_OBJECT) {
+            long dt = 0;
+            main[0] = 0;
+            main[1] = 0;
+            float wind = 0;
+            float pop = 0;
+            int weatherId = 800;
+            while (p.next() == JsonPullParser.Token.NAME) {
+                if (p.textEquals("dt")) {
+                    p.next();
+                    dt = p.longValue();
+                } else if (p.textEquals("main")) {
+                    readMain(p, main);
+                } else if (p.textEquals("wind")) {
+                    wind = readWindSpeed(p);
+                } else if (p.textEquals("pop")) {
+                    p.next();
+                    pop = (float) p.doubleValue();
+                } else if (p.textEquals("weather")) {
+                    weatherId = readWeatherId(p);
+                } else {
+                    p.skipValue();
+                }
+            }
+            series.add(dt, main[0], main[1], wind, pop, weatherId);
+        }
+    }
+
+    private static void readCity(JsonPullParser p, ForecastSeries series) throws IOException {
+        p.next(); // {
+        while (p.next() == JsonPullParser.Token.NAME) {
+            if (p.textEquals("timezone")) {
+                p.next();
+                series.setUtcOffset((int) p.longValue());
+            } else {
+                p.skipValue();
+            }
+        }
+    }
+
+    private static void readMain(JsonPullParser p, float[] main) throws IOException {
+        p.next(); // {
+        while (p.next() == JsonPullParser.Token.NAME) {
+            if (p.textEquals("temp")) {
+                p.next();
+                main[0] = (float) p.doubleValue();
+            } else if (p.textEquals("humidity")) {
+                p.next();
+                main[1] = (float) p.doubleValue();
+            } else {
+                p.skipValue();
+            }
+        }
+    }
+
+    private static float readWindSpeed(JsonPullParser p) throws IOException {
+        float speed = 0;
+        p.next(); // {
+        while (p.next() == JsonPullParser.Token.NAME) {
+            if (p.textEquals("speed")) {
+                p.next();
+                speed = (float) p.doubleValue();
+            } else {
+                p.skipValue();
+            }
+        }
+        return speed;
+    }
+
+    private static int readWeatherId(JsonPullParser p) throws IOException {
+        int id = 800;
+        boolean first = true;
+        p.next(); // [
+        while (p.next() == JsonPullParser.Token.BEGIN_OBJECT) {
+            while (p.next() == JsonPullParser.Token.NAME) {
+                if (first && p.textEquals("id")) {
+                    p.next();
+                    id = (int) p.longValue();
+                } else {
+                    p.skipValue();
+                }
+            }
+            first = false;
+        }
+        return id;
+    }
+}
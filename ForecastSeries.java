@@ -0,0 +1,194 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Every 3-hourly point of a /forecast payload, stored column-wise in primitive
+ * arrays: 26 bytes per point, about 1 KB for the usual 40 points, instead of a
+ * boxed object graph. Points are in time order and grouped into the city's local
+ * calendar days for per-day aggregates.
+ *
+ * Filled by ForecastParser through add and seal; read-only and safe to share once sealed.
+ */
+final class ForecastSeries {
+    private static final int NOON = WeatherFormat.SECONDS_PER_DAY / 2;
+
+    private long[] epoch;      // dt, epoch seconds
+    private float[] temp;      // °C
+    private float[] humidity;  // %
+    private float[] wind;      // m/s
+    private float[] pop;       // probability of precipitation, 0..1
+    private short[] weatherId;
+    private int size;
+    private int utcOffset;     // seconds east of UTC
+    private int[] dayStart;    // index of the first point of each local day, plus size at the end
+
+    ForecastSeries(int capacity, int utcOffset) {
+        epoch = new long[capacity];
+        temp = new float[capacity];
+        humidity = new float[capacity];
+        wind = new float[capacity];
+        pop = new float[capacity];
+        weatherId = new short[capacity];
+        this.utcOffset = utcOffset;
+    }
+
+    void add(long dt, float t, float h, float w, float p, int id) {
+        if (size == epoch.length) {
+            int capacity = Math.max(8, size * 2);
+            epoch = Arrays.copyOf(epoch, capacity);
+            temp = Arrays.copyOf(temp, capacity);
+            humidity = Arrays.copyOf(humidity, capacity);
+            wind = Arrays.copyOf(wind, capacity);
+            pop = Arrays.copyOf(pop, capacity);
+            weatherId = Arrays.copyOf(weatherId, capacity);
+        }
+        epoch[size] = dt;
+        temp[size] = t;
+        humidity[size] = h;
+        wind[size] = w;
+        pop[size] = p;
+        weatherId[size] = (short) id;
+        size++;
+    }
+
+    void setUtcOffset(int utcOffset) {
+        this.utcOffset = utcOffset;
+    }
+
+    /** Trims the columns and splits the points into local days; no more adds after this. */
+    ForecastSeries seal() {
+        if (epoch.length != size) {
+            epoch = Arrays.copyOf(epoch, size);
+            temp = Arrays.copyOf(temp, size);
+            humidity = Arrays.copyOf(humidity, size);
+            wind = Arrays.copyOf(wind, size);
+            pop = Arrays.copyOf(pop, size);
+            weatherId = Arrays.copyOf(weatherId, size);
+        }
+        int[] starts = new int[size + 1];
+        int days = 0;
+        for (int i = 0; i < size; i++) {
+            if (i == 0 || localDay(i) != localDay(i - 1)) {
+                starts[days++] = i;
+            }
+        }
+        starts[days] = size;
+        dayStart = Arrays.copyOf(starts, days + 1);
+        return this;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int utcOffset() {
+        return utcOffset;
+    }
+
+    long epoch(int i) {
+        return epoch[i];
+    }
+
+    float temp(int i) {
+        return temp[i];
+    }
+
+    float humidity(int i) {
+        return humidity[i];
+    }
+
+    float wind(int i) {
+        return wind[i];
+    }
+
+    float pop(int i) {
+        return pop[i];
+    }
+
+    int weatherId(int i) {
+        return weatherId[i];
+    }
+
+    int dayCount() {
+        return dayStart.length - 1;
+    }
+
+    /** Local epoch day (days since 1970-01-01 in the city's zone) of day d. */
+    long epochDay(int d) {
+        return localDay(dayStart[d]);
+    }
+
+    /** Points of day d are [dayStart(d), dayEnd(d)). */
+    int dayStart(int d) {
+        return dayStart[d];
+    }
+
+    int dayEnd(int d) {
+        return dayStart[d + 1];
+    }
+
+    float minTemp(int d) {
+        float min = Float.POSITIVE_INFINITY;
+        for (int i = dayStart[d], end = dayStart[d + 1]; i < end; i++) {
+            min = Math.min(min, temp[i]);
+        }
+        return min;
+    }
+
+    float maxTemp(int d) {
+        float max = Float.NEGATIVE_INFINITY;
+        for (int i = dayStart[d], end = dayStart[d + 1]; i < end; i++) {
+            max = Math.max(max, temp[i]);
+        }
+        return max;
+    }
+
+    float meanTemp(int d) {
+        double sum = 0;
+        for (int i = dayStart[d], end = dayStart[d + 1]; i < end; i++) {
+            sum += temp[i];
+        }
+        return (float) (sum / (dayStart[d + 1] - dayStart[d]));
+    }
+
+    /** The point of day d closest to local noon, used for the day's icon and headline temperature. */
+    int noonIndex(int d) {
+        int best = dayStart[d];
+        for (int i = best + 1, end = dayStart[d + 1]; i < end; i++) {
+            if (fromNoon(i) < fromNoon(best)) best = i;
+        }
+        return best;
+    }
+
+    /**
+     * Up to five whole days for the forecast strip. If the series has more than five
+     * days the first one is today's remainder and is skipped.
+     */
+    List<ForecastData> daily() {
+        int days = dayCount();
+        int from = days > 5 ? 1 : 0;
+        int to = Math.min(days, from + 5);
+        List<ForecastData> forecast = new ArrayList<>(to - from);
+        for (int d = from; d < to; d++) {
+            int i = noonIndex(d);
+            forecast.add(new ForecastData(WeatherFormat.dayOfWeek(epochDay(d)), widen(temp[i]), weatherId[i],
+                                          widen(minTemp(d)), widen(maxTemp(d))));
+        }
+        return Collections.unmodifiableList(forecast);
+    }
+
+    /** The API sends at most two decimals; drop the float noise so 19.6f reads back as 19.6. */
+    private static double widen(float value) {
+        return Math.round(value * 100.0) / 100.0;
+    }
+
+    private long localDay(int i) {
+        return Math.floorDiv(epoch[i] + utcOffset, WeatherFormat.SECONDS_PER_DAY);
+    }
+
+    private int fromNoon(int i) {
+        return Math.abs((int) Math.floorMod(epoch[i] + utcOffset, (long) WeatherFormat.SECONDS_PER_DAY) - NOON);
+    }
+}
@@ -0,0 +1,130 @@
+import javax.swing.*;
+import javax.swing.border.*;
+import java.awt.*;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The 5-day strip under the current weather. The day cards are created once and
+ * only their label texts change on refresh; a label that keeps its preferred size
+ * does not trigger a relayout, so a refresh with the same days costs a repaint.
+ */
+class ForecastView extends JPanel {
+    static final int DAYS = 5;
+
+    private static final Color CARD_BACKGROUND = new Color(248, 250, 255);
+    private static final Color TEMP_COLOR = new Color(230, 80, 50);
+    private static final Color RANGE_COLOR = new Color(110, 120, 140);
+    private static final Border CARD_BORDER = BorderFactory.createCompoundBorder(
+        new LineBorder(new Color(220, 230, 245), 1, true),
+        new EmptyBorder(8, 6, 8, 6)
+    );
+    private static final Font DAY_FONT = new Font("Segoe UI", Font.BOLD, 11);
+    private static final Font ICON_FONT = new Font("Segoe UI Emoji", Font.PLAIN, 28);
+    private static final Font TEMP_FONT = new Font("Segoe UI", Font.BOLD, 13);
+    private static final Font RANGE_FONT = new Font("Segoe UI", Font.PLAIN, 11);
+
+    private final DayCard[] cards = new DayCard[DAYS];
+    private List<ForecastData> forecast = Collections.emptyList();
+    private boolean celsius = true;
+
+    ForecastView() {
+        super(new GridLayout(1, DAYS, 8, 8));
+        setOpaque(false);
+        for (int i = 0; i < DAYS; i++) {
+            cards[i] = new DayCard();
+            cards[i].setVisible(false);
+            add(cards[i]);
+        }
+    }
+
+    /** Shows up to five days; an empty list clears the strip. */
+    void setForecast(List<ForecastData> forecast) {
+        this.forecast = forecast;
+        render();
+    }
+
+    void setCelsius(boolean celsius) {
+        if (this.celsius != celsius) {
+            this.celsius = celsius;
+            render();
+        }
+    }
+
+    void clear() {
+        setForecast(Collections.emptyList());
+    }
+
+    private void render() {
+        for (int i = 0; i < DAYS; i++) {
+            if (i < forecast.size()) {
+                ForecastData f = forecast.get(i);
+                cards[i].show(f.day, WeatherFormat.getEmojiForWeatherCode(f.weatherId), WeatherFormat.temperature(f.temp, celsius),
+                              WeatherFormat.degrees(f.high, celsius) + " / " + WeatherFormat.degrees(f.low, celsius));
+            } else if (cards[i].isVisible()) {
+                cards[i].setVisible(false);
+            }
+        }
+    }
+
+    private static final class DayCard extends JPanel {
+        private final JLabel day = new StableLabel(DAY_FONT, null);
+        private final JLabel icon = new StableLabel(ICON_FONT, null);
+        private final JLabel temp = new StableLabel(TEMP_FONT, TEMP_COLOR);
+        private final JLabel range = new StableLabel(RANGE_FONT, RANGE_COLOR);
+
+        DayCard() {
+            setLayout(new BoxLayout(this, BoxLayout.Y_AXIS));
+            setBackground(CARD_BACKGROUND);
+            setBorder(CARD_BORDER);
+            add(day);
+            add(Box.createRigidArea(new Dimension(0, 4)));
+            add(icon);
+            add(Box.createRigidArea(new Dimension(0, 4)));
+            add(temp);
+            add(range);
+        }
+
+        void show(String dayText, String iconText, String tempText, String rangeText) {
+            update(day, dayText);
+            update(icon, iconText);
+            update(temp, tempText);
+            update(range, rangeText);
+            if (!isVisible()) {
+                setVisible(true);
+            }
+        }
+
+        private static void update(JLabel label, String text) {
+            if (!text.equals(label.getText())) {
+                label.setText(text);
+            }
+        }
+    }
+
+    /**
+     * JLabel revalidates on every text change, which re-lays out the whole window.
+     * Here that only happens when the new text actually needs a different size.
+     */
+    private static final class StableLabel extends JLabel {
+        private Dimension laidOutSize;
+
+        StableLabel(Font font, Color foreground) {
+            super(" ", SwingConstants.CENTER);
+            setFont(font);
+            if (foreground != null) {
+                setForeground(foreground);
+            }
+            setAlignmentX(Component.CENTER_ALIGNMENT);
+        }
+
+        @Override
+        public void revalidate() {
+            Dimension size = getPreferredSize();
+            if (!size.equals(laidOutSize)) {
+                laidOutSize = size;
+                super.revalidate();
+            }
+        }
+    }
+}
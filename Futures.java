@@ -0,0 +1,23 @@
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * CompletableFuture helpers. Cancelling a derived stage (thenApply, thenCombine, ...)
+ * does not reach the stages it was built from, so the engine links them explicitly
+ * wherever a caller may give up on a fetch.
+ */
+final class Futures {
+    private Futures() {
+    }
+
+    /** Cancels every upstream future once derived is cancelled; returns derived for chaining. */
+    static <T> CompletableFuture<T> propagateCancel(CompletableFuture<T> derived, CompletableFuture<?>... upstream) {
+        derived.whenComplete((value, error) -> {
+            if (derived.isCancelled()) {
+                for (CompletableFuture<?> f : upstream) {
+                    f.cancel(true);
+                }
+            }
+        });
+        return derived;
+    }
+}
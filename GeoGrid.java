@@ -0,0 +1,164 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Spatial index of recent observations on a fixed latitude/longitude grid.
+ * The globe is cut into square cells of cellDegrees (0.25° is about 28 km north to
+ * south); a cell's ID is row * columns + column, so the IDs covering a box are
+ * enumerated directly instead of searched for. Each cell keeps the latest observation
+ * made anywhere inside it, from a city lookup, a group refresh or a point fetch,
+ * until it expires. Boxes crossing the antimeridian (west > east) are supported.
+ * Coordinates outside [-90, 90] x [-180, 180], NaN ones and a south edge north of
+ * the north edge are rejected with IllegalArgumentException.
+ */
+final class GeoGrid {
+    static final double EARTH_RADIUS_KM = 6371.0;
+
+    private static final class Entry {
+        final WeatherData data;
+        final long expiresAt;
+
+        Entry(WeatherData data, long expiresAt) {
+            this.data = data;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final double cellDegrees;
+    private final int rows;
+    private final int columns;
+    private final int maxEntries;
+    private final ConcurrentMap<Long, Entry> cells = new ConcurrentHashMap<>();
+
+    GeoGrid(double cellDegrees, int maxEntries) {
+        this.cellDegrees = cellDegrees;
+        this.rows = (int) Math.ceil(180 / cellDegrees);
+        this.columns = (int) Math.ceil(360 / cellDegrees);
+        this.maxEntries = maxEntries;
+    }
+
+    long cellOf(double lat, double lon) {
+        int row = Math.min(rows - 1, Math.max(0, (int) Math.floor((lat + 90) / cellDegrees)));
+        int column = Math.floorMod((int) Math.floor((lon + 180) / cellDegrees), columns);
+        return (long) row * columns + column;
+    }
+
+    double centerLat(long cell) {
+        return Math.min(90, -90 + (cell / columns + 0.5) * cellDegrees);
+    }
+
+    double centerLon(long cell) {
+        double lon = -180 + (cell % columns + 0.5) * cellDegrees;
+        return lon > 180 ? lon - 360 : lon;
+    }
+
+    /** The cells overlapping the box, row by row; empty if it has more than maxCells. */
+    List<Long> cellsIn(double south, double west, double north, double east, int maxCells) {
+        checkLatitude("south", south);
+        checkLatitude("north", north);
+        checkLongitude("west", west);
+        checkLongitude("east", east);
+        if (south > north) {
+            throw new IllegalArgumentException("south (" + south + ") is north of north (" + north + ")");
+        }
+        if (east == 180) east = 180 - 1e-9; // the antimeridian is column 0's west edge, not part of it
+        long first = cellOf(south, west);
+        long last = cellOf(north, east);
+        int fromRow = (int) (first / columns), toRow = (int) (last / columns);
+        int fromColumn = (int) (first % columns), toColumn = (int) (last % columns);
+        int width = Math.floorMod(toColumn - fromColumn, columns) + 1;
+        if (west > east && width == 1) width = columns; // a box all the way around
+        long count = (long) (toRow - fromRow + 1) * width;
+        if (toRow < fromRow || count > maxCells) return new ArrayList<>();
+
+        List<Long> ids = new ArrayList<>((int) count);
+        for (int row = fromRow; row <= toRow; row++) {
+            for (int i = 0; i < width; i++) {
+                ids.add((long) row * columns + (fromColumn + i) % columns);
+            }
+        }
+        return ids;
+    }
+
+    /** The cells whose centre lies within radiusKm of the point, plus the cell of the point itself. */
+    List<Long> cellsNear(double lat, double lon, double radiusKm, int maxCells) {
+        checkLatitude("lat", lat);
+        checkLongitude("lon", lon);
+        if (!(radiusKm >= 0) || Double.isInfinite(radiusKm)) {
+            throw new IllegalArgumentException("radiusKm must be a distance of 0 or more, not " + radiusKm);
+        }
+        double dLat = Math.toDegrees(radiusKm / EARTH_RADIUS_KM);
+        double cosLat = Math.cos(Math.toRadians(lat));
+        double dLon = cosLat < 1e-6 ? 180 : Math.min(180, dLat / cosLat);
+        double south = Math.max(-90, lat - dLat), north = Math.min(90, lat + dLat);
+        List<Long> ids = dLon >= 180
+            ? cellsIn(south, -180, north, 180 - 1e-9, maxCells)
+            : cellsIn(south, wrap(lon - dLon), north, wrap(lon + dLon), maxCells);
+        long own = cellOf(lat, lon);
+        ids.removeIf(cell -> cell != own && distanceKm(lat, lon, centerLat(cell), centerLon(cell)) > radiusKm);
+        if (ids.isEmpty()) ids.add(own);
+        return ids;
+    }
+
+    /** Files an observation under the cell of its coordinates; ignored if it has none. */
+    void put(WeatherData data, long ttlMillis) {
+        if (Double.isNaN(data.lat) || Double.isNaN(data.lon)) return;
+        if (cells.size() >= maxEntries) {
+            evict();
+        }
+        cells.put(cellOf(data.lat, data.lon), new Entry(data, System.currentTimeMillis() + ttlMillis));
+    }
+
+    /** The unexpired observation filed under cell, or null. */
+    WeatherData get(long cell) {
+        Entry e = cells.get(cell);
+        if (e == null) return null;
+        if (e.expiresAt <= System.currentTimeMillis()) {
+            cells.remove(cell, e);
+            return null;
+        }
+        return e.data;
+    }
+
+    int size() {
+        return cells.size();
+    }
+
+    private static void checkLatitude(String name, double lat) {
+        if (!(lat >= -90 && lat <= 90)) {
+            throw new IllegalArgumentException(name + " must be a latitude in [-90, 90], not " + lat);
+        }
+    }
+
+    private static void checkLongitude(String name, double lon) {
+        if (!(lon >= -180 && lon <= 180)) {
+            throw new IllegalArgumentException(name + " must be a longitude in [-180, 180], not " + lon);
+        }
+    }
+
+    static double distanceKm(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                 + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    private static double wrap(double lon) {
+        return lon >= 180 ? lon - 360 : lon < -180 ? lon + 360 : lon;
+    }
+
+    // Drops expired cells, then, if that was not enough, an arbitrary tenth of the rest
+    private void evict() {
+        long now = System.currentTimeMillis();
+        cells.values().removeIf(e -> e.expiresAt <= now);
+        Iterator<Long> it = cells.keySet().iterator();
+        for (int n = cells.size() - maxEntries * 9 / 10; n > 0 && it.hasNext(); n--) {
+            it.next();
+            it.remove();
+        }
+    }
+}
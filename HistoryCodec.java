@@ -0,0 +1,321 @@
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * Compressed columnar format for observation history, after Facebook's Gorilla.
+ *
+ * A stream is a header ([int magic][byte version]) followed by blocks of up to
+ * 1024 records and an end marker (a block length of 0):
+ *   [int payloadBytes][int count][long minObservedAt][long maxObservedAt][payload]
+ * The payload is a bit stream holding one column after another. Timestamps are
+ * stored as delta-of-delta, so a steady cadence costs one bit per record. The
+ * measurements are quantized to the precision the API delivers (0.01 °C,
+ * 0.01 m/s, whole %, hPa and metres) and stored as deltas from the previous
+ * record. Every delta uses the smallest of a few bit-width buckets behind a
+ * unary prefix, and 0 costs one bit.
+ * A typical 10-minute series takes 5-8 bytes per record, against 40 in a history
+ * segment and several hundred as JSON. The block header lets readers skip blocks
+ * outside a time range without decoding them.
+ */
+final class HistoryCodec {
+    static final int MAGIC = 0x57534843; // "WSHC"
+    static final int VERSION = 1;
+    static final int BLOCK_RECORDS = 1024;
+
+    // Quantization steps per measurement column, in the order the columns are written
+    private static final double[] SCALE = {100, 100, 1, 100, 1, 1}; // temp, feels, humidity, wind, pressure, visibility
+    private static final int COLUMNS = SCALE.length + 1; // plus weather id
+
+    private HistoryCodec() {
+    }
+
+    /** Buffers records into blocks and writes each block as soon as it is full. */
+    static final class Encoder implements Closeable {
+        private final DataOutputStream out;
+        private final long[] observedAt = new long[BLOCK_RECORDS];
+        private final long[][] columns = new long[COLUMNS][BLOCK_RECORDS];
+        private final BitWriter bits = new BitWriter();
+        private int count;
+        private long written;
+
+        Encoder(OutputStream out) throws IOException {
+            this.out = new DataOutputStream(out);
+            this.out.writeInt(MAGIC);
+            this.out.writeByte(VERSION);
+        }
+
+        void add(long observedAtSeconds, double temperature, double feelsLike, double humidity,
+                 double windSpeed, double pressure, double visibility, int weatherId) throws IOException {
+            observedAt[count] = observedAtSeconds;
+            columns[0][count] = Math.round(temperature * SCALE[0]);
+            columns[1][count] = Math.round(feelsLike * SCALE[1]);
+            columns[2][count] = Math.round(humidity * SCALE[2]);
+            columns[3][count] = Math.round(windSpeed * SCALE[3]);
+            columns[4][count] = Math.round(pressure * SCALE[4]);
+            columns[5][count] = Math.round(visibility * SCALE[5]);
+            columns[6][count] = weatherId;
+            if (++count == BLOCK_RECORDS) {
+                writeBlock();
+            }
+        }
+
+        /** Records added so far. */
+        long records() {
+            return written + count;
+        }
+
+        /** Writes the pending block and the end marker, then closes the underlying stream. */
+        @Override
+        public void close() throws IOException {
+            writeBlock();
+            out.writeInt(0);
+            out.close();
+        }
+
+        private void writeBlock() throws IOException {
+            if (count == 0) return;
+            bits.reset();
+            long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+            long prev = 0, prevDelta = 0;
+            for (int i = 0; i < count; i++) {
+                long t = observedAt[i];
+                min = Math.min(min, t);
+                max = Math.max(max, t);
+                if (i == 0) {
+                    bits.write(t, 64);
+                } else {
+                    long delta = t - prev;
+                    bits.writeVarBits(delta - prevDelta);
+                    prevDelta = delta;
+                }
+                prev = t;
+            }
+            for (long[] column : columns) {
+                long last = 0;
+                for (int i = 0; i < count; i++) {
+                    bits.writeVarBits(column[i] - last);
+                    last = column[i];
+                }
+            }
+            byte[] payload = bits.toByteArray();
+            out.writeInt(payload.length);
+            out.writeInt(count);
+            out.writeLong(min);
+            out.writeLong(max);
+            out.write(payload);
+            written += count;
+            count = 0;
+        }
+    }
+
+    /**
+     * Reads a stream record by record, one block in memory at a time. Blocks entirely
+     * outside [fromSeconds, toSeconds) are skipped unread; records inside a matching
+     * block are not filtered.
+     */
+    static final class Decoder implements Closeable {
+        private final DataInputStream in;
+        private final long from;
+        private final long to;
+        private final long[] observedAt = new long[BLOCK_RECORDS];
+        private final long[][] columns = new long[COLUMNS][BLOCK_RECORDS];
+        private int count;
+        private int index = -1;
+        private boolean done;
+
+        Decoder(InputStream in) throws IOException {
+            this(in, Long.MIN_VALUE, Long.MAX_VALUE);
+        }
+
+        Decoder(InputStream in, long fromSeconds, long toSeconds) throws IOException {
+            this.in = new DataInputStream(in);
+            this.from = fromSeconds;
+            this.to = toSeconds;
+            if (this.in.readInt() != MAGIC || this.in.readByte() != VERSION) {
+                throw new IOException("Not a history stream");
+            }
+        }
+
+        /** Advances to the next record; false at the end of the stream. */
+        boolean next() throws IOException {
+            if (++index < count) return true;
+            if (!done && readBlock()) {
+                index = 0;
+                return true;
+            }
+            done = true;
+            return false;
+        }
+
+        long observedAt() {
+            return observedAt[index];
+        }
+
+        double temperature() {
+            return columns[0][index] / SCALE[0];
+        }
+
+        double feelsLike() {
+            return columns[1][index] / SCALE[1];
+        }
+
+        double humidity() {
+            return columns[2][index] / SCALE[2];
+        }
+
+        double windSpeed() {
+            return columns[3][index] / SCALE[3];
+        }
+
+        double pressure() {
+            return columns[4][index] / SCALE[4];
+        }
+
+        double visibility() {
+            return columns[5][index] / SCALE[5];
+        }
+
+        int weatherId() {
+            return (int) columns[6][index];
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private boolean readBlock() throws IOException {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    return false; // stream cut short after a whole block
+                }
+                if (length == 0) return false;
+                int n = in.readInt();
+                long min = in.readLong();
+                long max = in.readLong();
+                if (max < from || min >= to) {
+                    in.skipNBytes(length);
+                    continue;
+                }
+                if (n <= 0 || n > BLOCK_RECORDS) {
+                    throw new IOException("Corrupt history block: " + n + " records");
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                decode(new BitReader(payload), n);
+                count = n;
+                return true;
+            }
+        }
+
+        private void decode(BitReader bits, int n) throws IOException {
+            long t = bits.read(64), delta = 0;
+            observedAt[0] = t;
+            for (int i = 1; i < n; i++) {
+                delta += bits.readVarBits();
+                t += delta;
+                observedAt[i] = t;
+            }
+            for (long[] column : columns) {
+                long value = 0;
+                for (int i = 0; i < n; i++) {
+                    value += bits.readVarBits();
+                    column[i] = value;
+                }
+            }
+        }
+    }
+
+    /**
+     * Signed values in the smallest fitting bucket: '0' for zero, then
+     * '10'+7, '110'+12, '1110'+20, '11110'+32 or '11111'+64 bits.
+     */
+    private static final int[] BUCKET_BITS = {7, 12, 20, 32, 64};
+
+    private static final class BitWriter {
+        private byte[] buf = new byte[1024];
+        private int bitPos;
+
+        void reset() {
+            Arrays.fill(buf, 0, (bitPos + 7) >>> 3, (byte) 0);
+            bitPos = 0;
+        }
+
+        void writeVarBits(long value) {
+            if (value == 0) {
+                write(0, 1);
+                return;
+            }
+            for (int b = 0; b < BUCKET_BITS.length; b++) {
+                int width = BUCKET_BITS[b];
+                if (width == 64 || (value >= -(1L << (width - 1)) && value < (1L << (width - 1)))) {
+                    int prefix = b + 2; // b+1 ones then a zero, except the last bucket which has no zero
+                    if (b == BUCKET_BITS.length - 1) {
+                        write((1L << (prefix - 1)) - 1, prefix - 1);
+                    } else {
+                        write(((1L << (prefix - 1)) - 1) << 1, prefix);
+                    }
+                    write(value, width);
+                    return;
+                }
+            }
+        }
+
+        /** Appends the low width bits of value, most significant first. */
+        void write(long value, int width) {
+            ensure(bitPos + width);
+            for (int i = width - 1; i >= 0; i--) {
+                if (((value >>> i) & 1) != 0) {
+                    buf[bitPos >>> 3] |= (byte) (0x80 >>> (bitPos & 7));
+                }
+                bitPos++;
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, (bitPos + 7) >>> 3);
+        }
+
+        private void ensure(int bits) {
+            int bytes = (bits + 7) >>> 3;
+            if (bytes > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(bytes, buf.length * 2));
+            }
+        }
+    }
+
+    private static final class BitReader {
+        private final byte[] buf;
+        private int bitPos;
+
+        BitReader(byte[] buf) {
+            this.buf = buf;
+        }
+
+        long readVarBits() throws IOException {
+            int ones = 0;
+            while (ones < BUCKET_BITS.length && read(1) == 1) {
+                ones++;
+            }
+            if (ones == 0) return 0;
+            int width = BUCKET_BITS[ones - 1];
+            long raw = read(width);
+            return width == 64 ? raw : (raw << (64 - width)) >> (64 - width); // sign-extend
+        }
+
+        long read(int width) throws IOException {
+            if (bitPos + width > buf.length * 8) {
+                throw new EOFException("History block truncated");
+            }
+            long value = 0;
+            for (int i = 0; i < width; i++) {
+                value = (value << 1) | ((buf[bitPos >>> 3] >>> (7 - (bitPos & 7))) & 1);
+                bitPos++;
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Async gate in front of every call to the upstream host.
+ * At most maxConcurrent requests are in flight, and request starts are spaced at
+ * least minIntervalMillis apart so a burst (e.g. refreshing every favorite) is
+ * smoothed out instead of hitting the API all at once. Waiters are served FIFO.
+ */
+final class HostRateLimiter {
+    private final int maxConcurrent;
+    private final long minIntervalNanos;
+    private final Executor executor;
+    private final Deque<CompletableFuture<Void>> waiting = new ArrayDeque<>();
+    private int active;
+    private long nextStartNanos = System.nanoTime();
+
+    HostRateLimiter(int maxConcurrent, long minIntervalMillis, Executor executor) {
+        this.maxConcurrent = maxConcurrent;
+        this.minIntervalNanos = TimeUnit.MILLISECONDS.toNanos(minIntervalMillis);
+        this.executor = executor;
+    }
+
+    /**
+     * Completes when the caller may send; every successful acquire must be paired with release().
+     * Cancelling the permit before it is granted leaves the queue without taking a slot.
+     */
+    CompletableFuture<Void> acquire() {
+        CompletableFuture<Void> permit = new CompletableFuture<>();
+        synchronized (this) {
+            waiting.add(permit);
+            dispatch();
+        }
+        permit.whenComplete((granted, error) -> {
+            if (permit.isCancelled()) {
+                synchronized (this) {
+                    waiting.remove(permit);
+                }
+            }
+        });
+        return permit;
+    }
+
+    void release() {
+        synchronized (this) {
+            active--;
+            dispatch();
+        }
+    }
+
+    // Caller holds the lock; permits are completed on the executor, never under the lock
+    private void dispatch() {
+        while (active < maxConcurrent && !waiting.isEmpty()) {
+            CompletableFuture<Void> permit = waiting.poll();
+            active++;
+            long now = System.nanoTime();
+            long start = Math.max(now, nextStartNanos);
+            nextStartNanos = start + minIntervalNanos;
+            CompletableFuture.delayedExecutor(start - now, TimeUnit.NANOSECONDS, executor).execute(() -> {
+                if (!permit.complete(null)) {
+                    release(); // the waiter gave up (cancelled) before its turn
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,17 @@
+import java.io.IOException;
+
+/** Non-200 answer from the upstream; keeps the status so callers can react to 404 or 429. */
+class HttpStatusException extends IOException {
+    final int statusCode;
+    final long retryAfterMillis; // from a Retry-After header, or 0
+
+    HttpStatusException(int statusCode) {
+        this(statusCode, 0);
+    }
+
+    HttpStatusException(int statusCode, long retryAfterMillis) {
+        super("HTTP response code: " + statusCode);
+        this.statusCode = statusCode;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+}
@@ -0,0 +1,237 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Minimal pull parser over a Reader, used where building a full org.json tree
+ * would be wasteful. Field names and string values stay in a reused buffer, so
+ * callers compare them with {@link #textEquals(String)} instead of allocating.
+ * Numbers are also kept as raw text and converted on demand.
+ */
+final class JsonPullParser {
+    enum Token { BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT }
+
+    private final Reader reader;
+    private final char[] buf = new char[8192];
+    private int pos, limit;
+
+    private final StringBuilder text = new StringBuilder(64);
+    private boolean[] objectStack = new boolean[16];
+    private int depth;
+    private boolean expectName;
+
+    JsonPullParser(Reader reader) {
+        this.reader = reader;
+    }
+
+    Token next() throws IOException {
+        int c = nextNonWhitespace();
+        if (c == ',' || c == ':') {
+            c = nextNonWhitespace();
+        }
+        switch (c) {
+            case -1:
+                return Token.END_DOCUMENT;
+            case '{':
+                push(true);
+                expectName = true;
+                return Token.BEGIN_OBJECT;
+            case '[':
+                push(false);
+                return Token.BEGIN_ARRAY;
+            case '}':
+                pop();
+                return Token.END_OBJECT;
+            case ']':
+                pop();
+                return Token.END_ARRAY;
+            case '"':
+                readString();
+                if (depth > 0 && objectStack[depth - 1] && expectName) {
+                    expectName = false;
+                    return Token.NAME;
+                }
+                valueDone();
+                return Token.STRING;
+            case 't':
+            case 'f':
+                readLiteral(c);
+                valueDone();
+                return Token.BOOLEAN;
+            case 'n':
+                readLiteral(c);
+                valueDone();
+                return Token.NULL;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    readNumber(c);
+                    valueDone();
+                    return Token.NUMBER;
+                }
+                throw new IOException("Unexpected character '" + (char) c + "' in JSON");
+        }
+    }
+
+    /** Skips the value that follows a NAME token (or the next value in an array). */
+    void skipValue() throws IOException {
+        int open = 0;
+        do {
+            Token t = next();
+            if (t == Token.BEGIN_OBJECT || t == Token.BEGIN_ARRAY) {
+                open++;
+            } else if (t == Token.END_OBJECT || t == Token.END_ARRAY) {
+                open--;
+            } else if (t == Token.END_DOCUMENT) {
+                throw new EOFException("Unexpected end of JSON");
+            }
+        } while (open > 0);
+    }
+
+    /** Compares the current name, string or raw number with s without allocating. */
+    boolean textEquals(String s) {
+        if (text.length() != s.length()) return false;
+        for (int i = 0; i < s.length(); i++) {
+            if (text.charAt(i) != s.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    String text() {
+        return text.toString();
+    }
+
+    long longValue() {
+        long value = 0;
+        boolean negative = false;
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            if (ch == '-') {
+                negative = true;
+            } else if (ch >= '0' && ch <= '9') {
+                value = value * 10 + (ch - '0');
+            } else {
+                return (long) doubleValue();
+            }
+        }
+        return negative ? -value : value;
+    }
+
+    double doubleValue() {
+        // Fast path for plain decimals such as 12.34; anything else goes through the JDK
+        long mantissa = 0;
+        int digits = 0, scale = 0;
+        boolean negative = false, fraction = false;
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            if (ch >= '0' && ch <= '9') {
+                mantissa = mantissa * 10 + (ch - '0');
+                if (++digits > 15) return Double.parseDouble(text.toString());
+                if (fraction) scale++;
+            } else if (ch == '.' && !fraction) {
+                fraction = true;
+            } else if (ch == '-' && i == 0) {
+                negative = true;
+            } else {
+                return Double.parseDouble(text.toString());
+            }
+        }
+        double value = mantissa / POWERS_OF_TEN[scale];
+        return negative ? -value : value;
+    }
+
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+    };
+
+    private void push(boolean object) {
+        if (depth == objectStack.length) {
+            objectStack = Arrays.copyOf(objectStack, depth * 2);
+        }
+        objectStack[depth++] = object;
+    }
+
+    private void pop() {
+        depth--;
+        valueDone();
+    }
+
+    private void valueDone() {
+        if (depth > 0 && objectStack[depth - 1]) {
+            expectName = true;
+        }
+    }
+
+    private int read() throws IOException {
+        if (pos == limit) {
+            limit = reader.read(buf, 0, buf.length);
+            pos = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buf[pos++];
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        int c;
+        do {
+            c = read();
+        } while (c == ' ' || c == '\n' || c == '\r' || c == '\t');
+        return c;
+    }
+
+    private void readString() throws IOException {
+        text.setLength(0);
+        while (true) {
+            int c = read();
+            if (c == '"') return;
+            if (c == -1) throw new EOFException("Unterminated string in JSON");
+            if (c == '\\') {
+                c = read();
+                switch (c) {
+                    case 'n': text.append('\n'); break;
+                    case 't': text.append('\t'); break;
+                    case 'r': text.append('\r'); break;
+                    case 'b': text.append('\b'); break;
+                    case 'f': text.append('\f'); break;
+                    case 'u':
+                        int code = 0;
+                        for (int i = 0; i < 4; i++) {
+                            code = code * 16 + Character.digit(read(), 16);
+                        }
+                        text.append((char) code);
+                        break;
+                    default: text.append((char) c); // \" \\ \/
+                }
+            } else {
+                text.append((char) c);
+            }
+        }
+    }
+
+    private void readNumber(int first) throws IOException {
+        text.setLength(0);
+        text.append((char) first);
+        while (true) {
+            int c = read();
+            if ((c >= '0' && c <= '9') || c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-') {
+                text.append((char) c);
+            } else {
+                if (c != -1) pos--; // give the delimiter back
+                return;
+            }
+        }
+    }
+
+    private void readLiteral(int first) throws IOException {
+        text.setLength(0);
+        text.append((char) first);
+        int c;
+        while ((c = read()) >= 'a' && c <= 'z') {
+            text.append((char) c);
+        }
+        if (c != -1) pos--;
+    }
+}
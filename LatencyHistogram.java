@@ -0,0 +1,88 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with log-linear buckets, in the spirit of HdrHistogram.
+ * Durations are kept in microseconds: exactly below 32 µs, and above that each power
+ * of two is split into 16 equal buckets, so any recorded value is known to within
+ * about 3%. 544 buckets cover 1 µs to about 19 hours; longer durations land in the
+ * last bucket. Recording is an array increment and never allocates.
+ */
+final class LatencyHistogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;   // exact values below this
+    private static final int HALF = SUB_COUNT / 2;        // buckets per power of two above it
+    private static final int MAX_MAGNITUDE = 36;          // 2^36 µs, about 19 hours
+    private static final int BUCKETS = (MAX_MAGNITUDE - SUB_BITS + 2) * HALF + HALF;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumMicros = new LongAdder();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    /** Records the time since startNanos, a System.nanoTime() reading. */
+    void recordSince(long startNanos) {
+        recordNanos(System.nanoTime() - startNanos);
+    }
+
+    void recordNanos(long nanos) {
+        long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+        counts.incrementAndGet(indexOf(micros));
+        count.increment();
+        sumMicros.add(micros);
+        if (micros > maxMicros.get()) {
+            maxMicros.accumulateAndGet(micros, Math::max);
+        }
+    }
+
+    long count() {
+        return count.sum();
+    }
+
+    double meanMillis() {
+        long n = count.sum();
+        return n == 0 ? 0 : sumMicros.sum() / 1000.0 / n;
+    }
+
+    double maxMillis() {
+        return maxMicros.get() / 1000.0;
+    }
+
+    /** The duration below which percentile % of the recorded values fall, in milliseconds; 0 if empty. */
+    double percentileMillis(double percentile) {
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(midpointOf(i), maxMicros.get()) / 1000.0;
+            }
+        }
+        return maxMillis();
+    }
+
+    static int indexOf(long micros) {
+        if (micros < SUB_COUNT) return (int) micros;
+        int magnitude = Math.min(63 - Long.numberOfLeadingZeros(micros), MAX_MAGNITUDE);
+        int shift = magnitude - SUB_BITS + 1;
+        long sub = Math.min(micros >>> shift, SUB_COUNT - 1);
+        return shift * HALF + (int) sub;
+    }
+
+    /** Middle of the range of values that share bucket index. */
+    static long midpointOf(int index) {
+        if (index < SUB_COUNT) return index;
+        int shift = index / HALF - 1;
+        long low = (long) (index - shift * HALF) << shift;
+        return low + (1L << shift) / 2;
+    }
+}
@@ -0,0 +1,119 @@
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Closed-loop load test of the engine: a number of simulated users each fetch a
+ * snapshot for a random city, wait for it, and go again, for a fixed time. Reports
+ * throughput, end-to-end latency percentiles, outcomes, the engine's own stage
+ * metrics and what the upstream answered.
+ *
+ * Without an argument an in-process MockUpstream is started (configured through the
+ * -Dweather.mock.* properties), so no network or API key is needed; pass a base URL
+ * to aim at another upstream instead; against the mock the API quota is off unless
+ * -Dweather.quota.* is given. The engine gets a throwaway cache directory
+ * unless -Dweather.cacheDir is set, so test cities never reach the real caches.
+ * <pre>
+ *   -Dload.users=50      concurrent users
+ *   -Dload.seconds=30    run time
+ *   -Dload.cities=5000   distinct city names drawn from; fewer means more cache hits
+ * </pre>
+ * Start with: java -cp .:json-20231013.jar -Dweather.mock.latencyMs=80 LoadGenerator [baseUrl]
+ */
+final class LoadGenerator {
+    private static final int USERS = Integer.getInteger("load.users", 50);
+    private static final int SECONDS = Integer.getInteger("load.seconds", 30);
+    private static final int CITIES = Integer.getInteger("load.cities", 5000);
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder ok = new LongAdder();
+    private final LongAdder stale = new LongAdder();
+    private final LongAdder notFound = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    public static void main(String[] args) throws Exception {
+        if (System.getProperty("weather.cacheDir") == null) {
+            System.setProperty("weather.cacheDir", Files.createTempDirectory("weather-load").toString());
+        }
+        MockUpstream mock = null;
+        String baseUrl;
+        if (args.length > 0) {
+            baseUrl = args[0];
+        } else {
+            // The mock has no plan to protect; a quota would only measure itself
+            if (System.getProperty("weather.quota.perMinute") == null) System.setProperty("weather.quota.perMinute", "0");
+            if (System.getProperty("weather.quota.perDay") == null) System.setProperty("weather.quota.perDay", "0");
+            mock = new MockUpstream(0, Paths.get(System.getProperty("weather.mock.fixtures", "bench/fixtures")));
+            mock.start();
+            baseUrl = mock.baseUrl();
+        }
+        System.out.printf("%d users, %d cities, %d s against %s%n", USERS, CITIES, SECONDS, baseUrl);
+
+        try (WeatherStation station = new WeatherStation(baseUrl)) {
+            new LoadGenerator().run(station);
+            System.out.println();
+            System.out.println(station.metrics().getReport());
+        } finally {
+            if (mock != null) {
+                System.out.println("Upstream responses by status: " + mock.served());
+                mock.close();
+            }
+        }
+    }
+
+    private void run(WeatherEngine engine) throws InterruptedException {
+        ExecutorService users = ThreadPools.newPerTaskExecutor("load-user");
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(SECONDS);
+        for (int u = 0; u < USERS; u++) {
+            users.execute(() -> {
+                while (System.nanoTime() < end && !Thread.currentThread().isInterrupted()) {
+                    request(engine, "City " + ThreadLocalRandom.current().nextInt(CITIES));
+                }
+            });
+        }
+        users.shutdown();
+        long lastCount = 0;
+        long lastReport = start;
+        while (!users.awaitTermination(5, TimeUnit.SECONDS)) {
+            long now = System.nanoTime();
+            long count = latency.count();
+            System.out.printf("%4ds  %7.1f req/s  p50 %7.2f ms  p99 %7.2f ms  failed %d%n",
+                TimeUnit.NANOSECONDS.toSeconds(now - start),
+                (count - lastCount) * 1e9 / (now - lastReport),
+                latency.percentileMillis(50), latency.percentileMillis(99), failed.sum());
+            lastCount = count;
+            lastReport = now;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.println();
+        System.out.printf("requests   %d in %.1f s = %.1f req/s%n", latency.count(), seconds, latency.count() / seconds);
+        System.out.printf("outcomes   ok %d, stale %d, not found %d, failed %d%n",
+            ok.sum(), stale.sum(), notFound.sum(), failed.sum());
+        System.out.printf("latency    p50 %.2f  p90 %.2f  p99 %.2f  p99.9 %.2f  max %.2f ms%n",
+            latency.percentileMillis(50), latency.percentileMillis(90), latency.percentileMillis(99),
+            latency.percentileMillis(99.9), latency.maxMillis());
+    }
+
+    private void request(WeatherEngine engine, String city) {
+        long start = System.nanoTime();
+        try {
+            WeatherSnapshot snapshot = engine.fetchSnapshotAsync(city).join();
+            if (snapshot.isStale()) {
+                stale.increment();
+            } else if (snapshot.weather != null) {
+                ok.increment();
+            } else {
+                notFound.increment();
+            }
+        } catch (CompletionException e) {
+            failed.increment();
+        }
+        latency.recordSince(start);
+    }
+}
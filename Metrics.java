@@ -0,0 +1,121 @@
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters and latency histograms for one engine.
+ * - Timers are named after the stage they cover ("http.exchange", "parse.forecast",
+ *   "ui.current", ...) and created on first use
+ * - Counters are incremented by name ("http.status.404", "http.error.HttpTimeoutException")
+ * - Gauges read a value owned elsewhere, such as the response caches' hit counts
+ * Everything can be read as a text table, in the Prometheus text format and over JMX.
+ */
+final class Metrics implements WeatherMetricsMXBean {
+    private final ConcurrentMap<String, LatencyHistogram> timers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+    private ObjectName registeredAs;
+
+    LatencyHistogram timer(String stage) {
+        return timers.computeIfAbsent(stage, s -> new LatencyHistogram());
+    }
+
+    void increment(String counter) {
+        counters.computeIfAbsent(counter, c -> new LongAdder()).increment();
+    }
+
+    void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    long counter(String name) {
+        LongAdder adder = counters.get(name);
+        if (adder != null) return adder.sum();
+        LongSupplier gauge = gauges.get(name);
+        return gauge != null ? gauge.getAsLong() : 0;
+    }
+
+    @Override
+    public Map<String, Long> getCounters() {
+        Map<String, Long> all = new TreeMap<>();
+        counters.forEach((name, adder) -> all.put(name, adder.sum()));
+        gauges.forEach((name, gauge) -> all.put(name, gauge.getAsLong()));
+        return all;
+    }
+
+    @Override
+    public Map<String, Double> getLatencyMillis() {
+        Map<String, Double> all = new TreeMap<>();
+        timers.forEach((stage, h) -> {
+            all.put(stage + ".p50", h.percentileMillis(50));
+            all.put(stage + ".p90", h.percentileMillis(90));
+            all.put(stage + ".p99", h.percentileMillis(99));
+            all.put(stage + ".max", h.maxMillis());
+        });
+        return all;
+    }
+
+    @Override
+    public String getReport() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("%-18s %7s %9s %9s %9s %9s%n", "stage (ms)", "count", "p50", "p90", "p99", "max"));
+        new TreeMap<>(timers).forEach((stage, h) -> out.append(String.format("%-18s %7d %9.2f %9.2f %9.2f %9.2f%n",
+            stage, h.count(), h.percentileMillis(50), h.percentileMillis(90), h.percentileMillis(99), h.maxMillis())));
+        out.append(String.format("%n"));
+        getCounters().forEach((name, value) -> out.append(String.format("%-30s %9d%n", name, value)));
+        return out.toString();
+    }
+
+    /**
+     * Prometheus text exposition: every timer becomes a summary in seconds and every
+     * counter or gauge a weather_-prefixed value with dots turned into underscores.
+     */
+    String toPrometheus() {
+        StringBuilder out = new StringBuilder();
+        new TreeMap<>(timers).forEach((stage, h) -> {
+            String name = "weather_" + stage.replace('.', '_') + "_seconds";
+            out.append("# TYPE ").append(name).append(" summary\n");
+            for (double q : new double[] {0.5, 0.9, 0.99}) {
+                out.append(name).append("{quantile=\"").append(q).append("\"} ")
+                   .append(h.percentileMillis(q * 100) / 1000).append('\n');
+            }
+            out.append(name).append("_count ").append(h.count()).append('\n');
+            out.append(name).append("_sum ").append(h.meanMillis() * h.count() / 1000).append('\n');
+        });
+        getCounters().forEach((counter, value) ->
+            out.append("weather_").append(counter.replace('.', '_')).append(' ').append(value).append('\n'));
+        return out.toString();
+    }
+
+    /** Publishes these metrics on the platform MBean server; failures are logged and otherwise ignored. */
+    synchronized void registerMBean(String name) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName objectName = new ObjectName("weather:type=Metrics,name=" + ObjectName.quote(name));
+            for (int i = 2; server.isRegistered(objectName); i++) {
+                objectName = new ObjectName("weather:type=Metrics,name=" + ObjectName.quote(name + "-" + i));
+            }
+            server.registerMBean(this, objectName);
+            registeredAs = objectName;
+        } catch (JMException e) {
+            System.err.println("Metrics not published over JMX: " + e);
+        }
+    }
+
+    synchronized void unregisterMBean() {
+        if (registeredAs == null) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredAs);
+        } catch (JMException e) {
+            System.err.println("Metrics MBean not unregistered: " + e);
+        }
+        registeredAs = null;
+    }
+}
@@ -0,0 +1,260 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+import org.json.*;
+
+/**
+ * Local stand-in for the OpenWeatherMap endpoints, for running the app, the server
+ * or LoadGenerator without network access or an API key.
+ * <pre>
+ *   GET /data/2.5/weather?q=...|id=...   recorded weather.json, renamed to the city
+ *   GET /data/2.5/weather?lat=...&lon=...  the same, for a made-up place at that point
+ *   GET /data/2.5/forecast?q=...|id=...  recorded forecast.json, renamed to the city
+ *   GET /data/2.5/group?id=1,2,...       one weather entry per ID
+ * </pre>
+ * Every city gets a stable made-up ID, so the ID and group paths of the engine work
+ * too; the observation time is moved to the current 10-minute slot. Faults are
+ * injected per request: a fixed latency plus random jitter, and given fractions of
+ * 500s, 429s (with Retry-After) and 404s. Faults are drawn from one seeded Random,
+ * so a run with the same seed and arrival order fails the same requests.
+ *
+ * Start with: java -cp .:json-20231013.jar MockUpstream [port]  (default 8081, or -Dweather.mock.port)
+ * then run the app with -Dweather.baseUrl=http://localhost:8081/data/2.5. Fixtures come
+ * from -Dweather.mock.fixtures (default bench/fixtures); faults from -Dweather.mock.latencyMs,
+ * jitterMs, errorRate, throttleRate, notFoundRate and seed.
+ */
+final class MockUpstream implements AutoCloseable {
+    private final HttpServer server;
+    private final ExecutorService handlers = ThreadPools.newPerTaskExecutor("mock-upstream");
+    private final String weatherFixture;
+    private final String forecastFixture;
+    private final ConcurrentMap<String, Integer> idsByName = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, String> namesById = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger(9_000_000);
+    private final ConcurrentMap<Integer, LongAdder> served = new ConcurrentHashMap<>();
+    private final Random random = new Random(Long.getLong("weather.mock.seed", 42));
+
+    private volatile long latencyMillis = Long.getLong("weather.mock.latencyMs", 0);
+    private volatile long jitterMillis = Long.getLong("weather.mock.jitterMs", 0);
+    private volatile double errorRate = doubleProperty("weather.mock.errorRate");
+    private volatile double throttleRate = doubleProperty("weather.mock.throttleRate");
+    private volatile double notFoundRate = doubleProperty("weather.mock.notFoundRate");
+
+    MockUpstream(int port, Path fixtures) throws IOException {
+        this.weatherFixture = Files.readString(fixtures.resolve("weather.json"));
+        this.forecastFixture = Files.readString(fixtures.resolve("forecast.json"));
+        this.server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        server.setExecutor(handlers);
+        server.createContext("/data/2.5/weather", exchange -> handle(exchange, this::weather));
+        server.createContext("/data/2.5/forecast", exchange -> handle(exchange, this::forecast));
+        server.createContext("/data/2.5/group", exchange -> handle(exchange, this::group));
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : Integer.getInteger("weather.mock.port", 8081);
+        MockUpstream mock = new MockUpstream(port, Paths.get(System.getProperty("weather.mock.fixtures", "bench/fixtures")));
+        mock.start();
+        System.out.println("Mock upstream listening; run clients with -Dweather.baseUrl=" + mock.baseUrl());
+    }
+
+    void start() {
+        server.start();
+    }
+
+    int port() {
+        return server.getAddress().getPort();
+    }
+
+    /** The value for -Dweather.baseUrl or the WeatherStation(String) constructor. */
+    String baseUrl() {
+        return "http://localhost:" + port() + "/data/2.5";
+    }
+
+    /** Every response waits latencyMillis plus up to jitterMillis more. */
+    void setLatency(long latencyMillis, long jitterMillis) {
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+    }
+
+    /** Fractions (0..1) of requests answered with 500, 429 and 404 instead of a payload. */
+    void setFaults(double errorRate, double throttleRate, double notFoundRate) {
+        this.errorRate = errorRate;
+        this.throttleRate = throttleRate;
+        this.notFoundRate = notFoundRate;
+    }
+
+    /** Responses sent so far, by status code. */
+    Map<Integer, Long> served() {
+        Map<Integer, Long> counts = new TreeMap<>();
+        served.forEach((status, n) -> counts.put(status, n.sum()));
+        return counts;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        handlers.shutdownNow();
+    }
+
+    private interface Responder {
+        /** The JSON body for a 200, or null for a 404. */
+        String respond(HttpExchange exchange);
+    }
+
+    private void handle(HttpExchange exchange, Responder responder) throws IOException {
+        try {
+            long delay = latencyMillis + (jitterMillis > 0 ? (long) (nextDouble() * jitterMillis) : 0);
+            if (delay > 0) {
+                Thread.sleep(delay);
+            }
+            double roll = nextDouble();
+            if (roll < throttleRate) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                send(exchange, 429, "{\"cod\":429,\"message\":\"Your account is temporary blocked due to exceeding of requests limitation\"}");
+            } else if (roll < throttleRate + errorRate) {
+                send(exchange, 500, "{\"cod\":500,\"message\":\"Internal error\"}");
+            } else if (roll < throttleRate + errorRate + notFoundRate) {
+                send(exchange, 404, "{\"cod\":\"404\",\"message\":\"city not found\"}");
+            } else {
+                String body = responder.respond(exchange);
+                if (body == null) {
+                    send(exchange, 404, "{\"cod\":\"404\",\"message\":\"city not found\"}");
+                } else {
+                    send(exchange, 200, body);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private String weather(HttpExchange exchange) {
+        String lat = queryParam(exchange, "lat"), lon = queryParam(exchange, "lon");
+        if (lat != null && lon != null) {
+            try {
+                double y = Double.parseDouble(lat), x = Double.parseDouble(lon);
+                String place = String.format(Locale.ROOT, "Place %.2f,%.2f", y, x);
+                return weatherFor(place).put("coord", new JSONObject().put("lat", y).put("lon", x)).toString();
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        String city = cityOf(exchange);
+        return city == null ? null : weatherFor(city).toString();
+    }
+
+    private String forecast(HttpExchange exchange) {
+        String city = cityOf(exchange);
+        if (city == null) return null;
+        JSONObject forecast = new JSONObject(forecastFixture);
+        JSONObject meta = forecast.getJSONObject("city");
+        meta.put("name", city);
+        meta.put("id", idFor(city));
+        return forecast.toString();
+    }
+
+    private String group(HttpExchange exchange) {
+        String ids = queryParam(exchange, "id");
+        if (ids == null || ids.isEmpty()) return null;
+        JSONArray list = new JSONArray();
+        for (String id : ids.split(",")) {
+            try {
+                String city = namesById.get(Integer.parseInt(id.trim()));
+                if (city != null) {
+                    list.put(weatherFor(city));
+                }
+            } catch (NumberFormatException e) {
+                // the real API ignores malformed IDs as well
+            }
+        }
+        return new JSONObject().put("cnt", list.length()).put("list", list).toString();
+    }
+
+    private JSONObject weatherFor(String city) {
+        long slot = System.currentTimeMillis() / 1000 / 600 * 600;
+        return new JSONObject(weatherFixture).put("name", city).put("id", idFor(city)).put("dt", slot);
+    }
+
+    /** The city a /weather or /forecast request asks for: its q= name, or the name behind its id=. */
+    private String cityOf(HttpExchange exchange) {
+        String q = queryParam(exchange, "q");
+        if (q != null) return q.isBlank() ? null : q.trim();
+        String id = queryParam(exchange, "id");
+        try {
+            return id == null ? null : namesById.get(Integer.parseInt(id));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private int idFor(String city) {
+        return idsByName.computeIfAbsent(city.toLowerCase(Locale.ROOT), key -> {
+            int id = nextId.getAndIncrement();
+            namesById.put(id, city);
+            return id;
+        });
+    }
+
+    private double nextDouble() {
+        synchronized (random) {
+            return random.nextDouble();
+        }
+    }
+
+    private void send(HttpExchange exchange, int status, String json) throws IOException {
+        served.computeIfAbsent(status, s -> new LongAdder()).increment();
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        String accept = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (accept != null && accept.contains("gzip")) {
+            ByteArrayOutputStream zipped = new ByteArrayOutputStream(body.length / 4);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(zipped)) {
+                gzip.write(body);
+            }
+            body = zipped.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static String queryParam(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) return null;
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            if (key.equals(name)) {
+                return eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    private static double doubleProperty(String name) {
+        String value = System.getProperty(name);
+        return value == null ? 0 : Double.parseDouble(value);
+    }
+}
@@ -0,0 +1,11 @@
+import java.io.IOException;
+
+/** A call refused without being sent because it would overrun the API key's quota. */
+class QuotaExceededException extends IOException {
+    final QuotaLimiter.Priority priority;
+
+    QuotaExceededException(QuotaLimiter.Priority priority, String message) {
+        super(message);
+        this.priority = priority;
+    }
+}
@@ -0,0 +1,288 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import org.json.*;
+
+/**
+ * Accounting for the API key's plan, in front of every upstream call (retries included).
+ * - Per minute: a token bucket of perMinute tokens, refilled evenly over the minute
+ * - Per day: a count of calls since 00:00 UTC, kept in stateFile across runs
+ * - Interactive calls (someone is waiting) wait for a minute token ahead of any
+ *   background call, and fail only when the day's budget is gone
+ * - Background calls (refreshes, dashboards, exports) leave backgroundReserve of both
+ *   budgets to interactive ones: near the minute limit they queue until the bucket has
+ *   refilled past the reserve, near the day limit, or behind a long queue, they are shed
+ * - A 429 empties the minute bucket, since the upstream counts differently than we do
+ * A limit of 0 means unlimited. Refused calls complete with QuotaExceededException.
+ */
+final class QuotaLimiter {
+    enum Priority { INTERACTIVE, BACKGROUND }
+
+    private static final int SAVE_EVERY = 20;
+
+    private final int perMinute;
+    private final long perDay;
+    private final double backgroundReserve;
+    private final Path stateFile;
+    private final Executor executor;
+    private final Deque<CompletableFuture<Void>> interactive = new ArrayDeque<>();
+    private final Deque<CompletableFuture<Void>> background = new ArrayDeque<>();
+
+    private double tokens;
+    private long refilledAt = System.nanoTime();
+    private LocalDate day = LocalDate.now(ZoneOffset.UTC);
+    private long usedToday;
+    private boolean wakeupPlanned;
+    private long wakeupAt; // System.nanoTime() of the next planned dispatch
+    private long waited;
+    private long shed;
+
+    QuotaLimiter(int perMinute, long perDay, double backgroundReserve, Path stateFile, Executor executor) {
+        this.perMinute = perMinute;
+        this.perDay = perDay;
+        this.backgroundReserve = backgroundReserve;
+        this.stateFile = stateFile;
+        this.executor = executor;
+        this.tokens = perMinute;
+        load();
+    }
+
+    /**
+     * The plan from -Dweather.quota.perMinute (60) and -Dweather.quota.perDay (33000, about the
+     * free plan's million a month), with -Dweather.quota.backgroundReserve (0.2) kept back from
+     * background work; today's count is kept under the cache directory (-Dweather.cacheDir).
+     */
+    static QuotaLimiter openDefault(Executor executor) {
+        String dir = System.getProperty("weather.cacheDir",
+                                        System.getProperty("user.home") + File.separator + ".weather-station");
+        Path stateFile = Paths.get(dir, "quota.json");
+        try {
+            Files.createDirectories(stateFile.getParent());
+        } catch (IOException e) {
+            System.err.println("Quota state kept in memory only: " + e.getMessage());
+            stateFile = null;
+        }
+        return new QuotaLimiter(Integer.getInteger("weather.quota.perMinute", 60),
+                                Long.getLong("weather.quota.perDay", 33_000),
+                                Double.parseDouble(System.getProperty("weather.quota.backgroundReserve", "0.2")),
+                                stateFile, executor);
+    }
+
+    /**
+     * Completes when the caller may send, or exceptionally with QuotaExceededException.
+     * Cancelling a queued permit gives up its place without using quota.
+     */
+    CompletableFuture<Void> acquire(Priority priority) {
+        CompletableFuture<Void> permit = new CompletableFuture<>();
+        QuotaExceededException refused = null;
+        synchronized (this) {
+            rollOver();
+            Deque<CompletableFuture<Void>> queue = priority == Priority.INTERACTIVE ? interactive : background;
+            if (perDay > 0 && usedToday >= perDay) {
+                refused = new QuotaExceededException(priority, "Daily quota of " + perDay + " calls used up, resets at 00:00 UTC");
+            } else if (priority == Priority.BACKGROUND
+                       && (!acceptsBackground() || perMinute > 0 && background.size() >= perMinute)) {
+                refused = new QuotaExceededException(priority, "Background call shed, API quota nearly used up");
+            } else {
+                queue.add(permit);
+                dispatch();
+                if (queue.peekLast() == permit) {
+                    waited++;
+                }
+            }
+            if (refused != null) {
+                shed++;
+            }
+        }
+        if (refused != null) {
+            permit.completeExceptionally(refused);
+            return permit;
+        }
+        permit.whenComplete((granted, error) -> {
+            if (permit.isCancelled()) {
+                synchronized (this) {
+                    queue(priority).remove(permit);
+                }
+            }
+        });
+        return permit;
+    }
+
+    /** The upstream answered 429: take it as the minute budget being spent, whatever our count says. */
+    synchronized void onThrottled() {
+        refill();
+        tokens = Math.min(tokens, 0);
+    }
+
+    /** Calls that could go out right now; -1 if there is no per-minute limit. */
+    synchronized int remainingThisMinute() {
+        if (perMinute <= 0) return -1;
+        refill();
+        return (int) tokens;
+    }
+
+    /** Calls left until 00:00 UTC; -1 if there is no daily limit. */
+    synchronized long remainingToday() {
+        if (perDay <= 0) return -1;
+        rollOver();
+        return Math.max(0, perDay - usedToday);
+    }
+
+    /** False once background calls are shed for the rest of the day. */
+    synchronized boolean acceptsBackground() {
+        rollOver();
+        return perDay <= 0 || perDay - usedToday > perDay * backgroundReserve;
+    }
+
+    /** How many background calls may wait at once; any beyond that are shed. */
+    int backgroundQueueLimit() {
+        return perMinute > 0 ? perMinute : Integer.MAX_VALUE;
+    }
+
+    synchronized long usedToday() {
+        rollOver();
+        return usedToday;
+    }
+
+    /** Calls that had to queue for a minute token. */
+    synchronized long waited() {
+        return waited;
+    }
+
+    /** Calls refused: background work shed, or anything once the day's budget was gone. */
+    synchronized long shed() {
+        return shed;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return (perMinute > 0 ? remainingThisMinute() + "/" + perMinute + " this minute" : "unlimited per minute")
+             + ", " + (perDay > 0 ? remainingToday() + "/" + perDay + " today" : usedToday + " today")
+             + (interactive.size() + background.size() > 0 ? ", " + (interactive.size() + background.size()) + " queued" : "");
+    }
+
+    /** Writes today's count to stateFile; also done every SAVE_EVERY calls. */
+    void save() {
+        if (stateFile == null) return;
+        String state;
+        synchronized (this) {
+            state = new JSONObject().put("day", day.toString()).put("used", usedToday).toString();
+        }
+        try {
+            Path temp = stateFile.resolveSibling(stateFile.getFileName() + ".tmp");
+            Files.writeString(temp, state);
+            Files.move(temp, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Quota state not saved: " + e.getMessage());
+        }
+    }
+
+    private void load() {
+        if (stateFile == null || !Files.exists(stateFile)) return;
+        try {
+            JSONObject state = new JSONObject(Files.readString(stateFile, StandardCharsets.UTF_8));
+            if (LocalDate.parse(state.getString("day")).equals(day)) {
+                usedToday = state.getLong("used");
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Quota state not loaded: " + e.getMessage());
+        }
+    }
+
+    private Deque<CompletableFuture<Void>> queue(Priority priority) {
+        return priority == Priority.INTERACTIVE ? interactive : background;
+    }
+
+    // Caller holds the lock; permits are completed on the executor, never under the lock
+    private void dispatch() {
+        rollOver();
+        refill();
+        double backgroundFloor = 1 + perMinute * backgroundReserve;
+        while (true) {
+            if (perDay > 0 && usedToday >= perDay) {
+                refuseQueued(interactive, Priority.INTERACTIVE, "Daily quota of " + perDay + " calls used up, resets at 00:00 UTC");
+            }
+            if (!acceptsBackground()) {
+                refuseQueued(background, Priority.BACKGROUND, "Background call shed, API quota nearly used up");
+            }
+            CompletableFuture<Void> permit;
+            if (!interactive.isEmpty() && hasToken(1)) {
+                permit = interactive.poll();
+            } else if (interactive.isEmpty() && !background.isEmpty() && hasToken(backgroundFloor)) {
+                permit = background.poll();
+            } else {
+                break;
+            }
+            if (permit.isDone()) continue; // cancelled while queued
+            if (perMinute > 0) tokens -= 1;
+            usedToday++;
+            if (usedToday % SAVE_EVERY == 0) executor.execute(this::save);
+            executor.execute(() -> {
+                if (!permit.complete(null)) {
+                    refund(); // cancelled between being granted and hearing about it
+                }
+            });
+        }
+        if (interactive.isEmpty() && background.isEmpty()) return;
+        // Come back when the head of the line has its tokens, unless an earlier visit is planned
+        double needed = interactive.isEmpty() ? backgroundFloor : 1;
+        long delayNanos = Math.max(1, (long) Math.ceil((needed - tokens) * TimeUnit.MINUTES.toNanos(1) / perMinute));
+        long at = System.nanoTime() + delayNanos;
+        if (wakeupPlanned && at - wakeupAt >= 0) return;
+        wakeupPlanned = true;
+        wakeupAt = at;
+        CompletableFuture.delayedExecutor(delayNanos, TimeUnit.NANOSECONDS, executor).execute(() -> {
+            synchronized (this) {
+                if (System.nanoTime() - wakeupAt >= 0) {
+                    wakeupPlanned = false;
+                }
+                dispatch();
+            }
+        });
+    }
+
+    private void refuseQueued(Deque<CompletableFuture<Void>> queue, Priority priority, String message) {
+        while (!queue.isEmpty()) {
+            CompletableFuture<Void> permit = queue.poll();
+            shed++;
+            executor.execute(() -> permit.completeExceptionally(new QuotaExceededException(priority, message)));
+        }
+    }
+
+    private boolean hasToken(double needed) {
+        return perMinute <= 0 || tokens >= needed;
+    }
+
+    private synchronized void refund() {
+        if (perMinute > 0) tokens = Math.min(perMinute, tokens + 1);
+        usedToday = Math.max(0, usedToday - 1);
+        dispatch();
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        if (perMinute > 0) {
+            tokens = Math.min(perMinute, tokens + (now - refilledAt) * (double) perMinute / TimeUnit.MINUTES.toNanos(1));
+        }
+        refilledAt = now;
+    }
+
+    private void rollOver() {
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        if (!today.equals(day)) {
+            day = today;
+            usedToday = 0;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+import java.io.IOException;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * Staleness-aware replacement for a fixed-period refresh timer.
+ * - After a successful refresh, the next one is planned for when the upstream should
+ *   have published a newer observation (its "dt" plus the update cadence)
+ * - A refresh never starts while the previous one is still running
+ * - Failures back off exponentially with jitter; HTTP 429 starts from a longer base
+ * - While paused (e.g. the window is iconified) nothing is fetched; a refresh that came
+ *   due in the meantime runs on resume
+ */
+final class RefreshScheduler {
+    // OpenWeatherMap publishes new observations about every 10 minutes, shortly after their dt
+    static final long UPSTREAM_CADENCE_MS = 10 * 60 * 1000L;
+    static final long UPSTREAM_SETTLE_MS = 60 * 1000L;
+    static final long MIN_DELAY_MS = 60 * 1000L;
+    static final long MAX_DELAY_MS = 20 * 60 * 1000L;
+    private static final long ERROR_BASE_MS = 15 * 1000L;
+    private static final long RATE_LIMITED_BASE_MS = 2 * 60 * 1000L;
+
+    /** How long until the observation after one taken at observedAt (epoch seconds) should be available. */
+    static long millisUntilNextObservation(long observedAt, long now) {
+        if (observedAt <= 0) return UPSTREAM_CADENCE_MS;
+        return observedAt * 1000L + UPSTREAM_CADENCE_MS + UPSTREAM_SETTLE_MS - now;
+    }
+
+    /** Receives the planned delay after every run, plus the error if that run failed. */
+    interface Listener {
+        void scheduled(long delayMillis, Throwable lastError);
+    }
+
+    private final ScheduledExecutorService timer;
+    private final boolean ownsTimer;
+    private final Supplier<CompletableFuture<WeatherSnapshot>> refresh;
+    private final Listener listener;
+
+    private ScheduledFuture<?> pending;
+    private boolean running;
+    private boolean paused;
+    private boolean dueWhilePaused;
+    private boolean inFlight;
+    private int failures;
+
+    RefreshScheduler(Supplier<CompletableFuture<WeatherSnapshot>> refresh, Listener listener) {
+        this(refresh, listener, Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "weather-refresh");
+            t.setDaemon(true);
+            return t;
+        }), true);
+    }
+
+    /**
+     * Runs on a timer shared with other schedulers; it only starts refreshes, which are
+     * asynchronous, so one thread serves any number. The owner shuts it down.
+     */
+    RefreshScheduler(Supplier<CompletableFuture<WeatherSnapshot>> refresh, Listener listener, ScheduledExecutorService timer) {
+        this(refresh, listener, timer, false);
+    }
+
+    private RefreshScheduler(Supplier<CompletableFuture<WeatherSnapshot>> refresh, Listener listener,
+                             ScheduledExecutorService timer, boolean ownsTimer) {
+        this.refresh = refresh;
+        this.listener = listener;
+        this.timer = timer;
+        this.ownsTimer = ownsTimer;
+    }
+
+    /** Starts refreshing; lastObservedAt is the dt of the data on screen (0 refreshes right away). */
+    synchronized void start(long lastObservedAt) {
+        running = true;
+        failures = 0;
+        long delay = lastObservedAt > 0 ? clamp(millisUntilNextObservation(lastObservedAt, System.currentTimeMillis())) : 0;
+        schedule(delay, null);
+    }
+
+    synchronized void stop() {
+        running = false;
+        dueWhilePaused = false;
+        cancelPending();
+    }
+
+    /** Stops for good and releases the timer thread, unless the timer is shared. */
+    synchronized void close() {
+        stop();
+        if (ownsTimer) timer.shutdownNow();
+    }
+
+    synchronized boolean isRunning() {
+        return running;
+    }
+
+    synchronized void pause() {
+        paused = true;
+    }
+
+    synchronized void resume() {
+        paused = false;
+        if (running && dueWhilePaused) {
+            dueWhilePaused = false;
+            schedule(0, null);
+        }
+    }
+
+    /** Tells the scheduler that fresh data arrived some other way (e.g. a manual search). */
+    synchronized void observed(WeatherSnapshot snapshot) {
+        if (running && !inFlight && snapshot.weather != null && !snapshot.isStale()) {
+            failures = 0;
+            schedule(clamp(millisUntilNextObservation(snapshot.weather.observedAt, System.currentTimeMillis())), null);
+        }
+    }
+
+    private void fire() {
+        synchronized (this) {
+            if (!running) return;
+            if (paused) {
+                dueWhilePaused = true;
+                return;
+            }
+            if (inFlight) return; // never overlap; the running refresh schedules the next one
+            inFlight = true;
+        }
+        CompletableFuture<WeatherSnapshot> result;
+        try {
+            result = refresh.get();
+        } catch (RuntimeException e) {
+            result = new CompletableFuture<>();
+            result.completeExceptionally(e);
+        }
+        result.whenComplete(this::completed);
+    }
+
+    private synchronized void completed(WeatherSnapshot snapshot, Throwable error) {
+        inFlight = false;
+        if (!running) return;
+        if (error == null && snapshot != null && snapshot.isStale()) {
+            error = snapshot.staleCause; // saved data stood in for a failed fetch: back off as for the failure
+        }
+        if (error == null && snapshot != null && snapshot.weather != null) {
+            failures = 0;
+            schedule(clamp(millisUntilNextObservation(snapshot.weather.observedAt, System.currentTimeMillis())), null);
+        } else {
+            failures++;
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            boolean rateLimited = cause instanceof HttpStatusException && ((HttpStatusException) cause).statusCode == 429;
+            long base = rateLimited ? RATE_LIMITED_BASE_MS : ERROR_BASE_MS;
+            long backoff = Math.min(MAX_DELAY_MS, base << Math.min(failures - 1, 10));
+            // "Equal jitter": half fixed, half random, so clients that failed together spread out
+            long delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+            schedule(delay, cause != null ? cause : new IOException("No data returned"));
+        }
+    }
+
+    private void schedule(long delayMillis, Throwable lastError) {
+        cancelPending();
+        pending = timer.schedule(this::fire, delayMillis, TimeUnit.MILLISECONDS);
+        if (listener != null) {
+            listener.scheduled(delayMillis, lastError);
+        }
+    }
+
+    private void cancelPending() {
+        if (pending != null) {
+            pending.cancel(false);
+            pending = null;
+        }
+    }
+
+    private static long clamp(long delay) {
+        return Math.max(MIN_DELAY_MS, Math.min(MAX_DELAY_MS, delay));
+    }
+}
@@ -0,0 +1,90 @@
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Orders fetches triggered from the UI, where one fetch is wanted at a time.
+ * - Input is debounced: a burst of Enter presses, clicks or combo changes starts one
+ *   fetch, for the last query, once the input has been quiet for the debounce delay
+ * - Starting a fetch cancels the one still in flight (the engine only aborts the call
+ *   if nobody else, such as the auto refresh, is waiting on it)
+ * - Every fetch carries a sequence number and only the latest one's result is handed
+ *   to the handler, so a slow answer to an older query never overwrites a newer one
+ * Must be used on the event dispatch thread; the handler is called there too.
+ */
+final class RequestManager<T> {
+    /** Receives the result of the latest request; error is null on success. */
+    interface Handler<T> {
+        void completed(String query, T result, Throwable error);
+    }
+
+    private final Function<String, CompletableFuture<T>> fetch;
+    private final Handler<T> handler;
+    private final Timer debounce;
+    private String pendingQuery;
+    private CompletableFuture<T> inFlight;
+    private long sequence;
+    private long started;
+    private long superseded;
+
+    RequestManager(int debounceMillis, Function<String, CompletableFuture<T>> fetch, Handler<T> handler) {
+        this.fetch = fetch;
+        this.handler = handler;
+        this.debounce = new Timer(debounceMillis, e -> submitNow(pendingQuery));
+        this.debounce.setRepeats(false);
+    }
+
+    /** Fetches query once no other submit has come in for the debounce delay. */
+    void submit(String query) {
+        pendingQuery = query;
+        debounce.restart();
+    }
+
+    /** Fetches query right away, superseding whatever was pending or in flight. */
+    void submitNow(String query) {
+        debounce.stop();
+        pendingQuery = null;
+        cancelInFlight();
+        long seq = ++sequence;
+        started++;
+        CompletableFuture<T> call = fetch.apply(query);
+        inFlight = call;
+        call.whenComplete((result, error) ->
+            SwingUtilities.invokeLater(() -> deliver(seq, query, result, error)));
+    }
+
+    /** Drops the pending query and cancels the fetch in flight; nothing is delivered for them. */
+    void cancel() {
+        debounce.stop();
+        pendingQuery = null;
+        cancelInFlight();
+        sequence++;
+    }
+
+    /** True while a query is waiting out the debounce or its fetch has not been delivered yet. */
+    boolean isBusy() {
+        return pendingQuery != null || inFlight != null;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("started=%d superseded=%d", started, superseded);
+    }
+
+    private void cancelInFlight() {
+        if (inFlight != null) {
+            inFlight.cancel(true);
+            inFlight = null;
+            superseded++;
+        }
+    }
+
+    private void deliver(long seq, String query, T result, Throwable error) {
+        if (seq != sequence) return; // a newer request has been made since
+        inFlight = null;
+        if (error instanceof CancellationException) return;
+        handler.completed(query, result, error);
+    }
+}
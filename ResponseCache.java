@@ -0,0 +1,184 @@
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Bounded in-memory cache for API results.
+ * - Entries expire after a per-call TTL (each endpoint passes its own)
+ * - Least recently used entries are evicted once maxEntries is reached
+ * - Concurrent misses for the same key share a single load (single-flight)
+ * - Failed loads (null results or exceptions) are never cached
+ * - Every caller gets its own future; a load is cancelled only once all of its callers cancelled
+ */
+final class ResponseCache<V> {
+    private static final class Entry<V> {
+        final V value;
+        final long expiresAt;
+
+        Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /** One running load and the number of callers still waiting for it. */
+    private static final class Flight<V> {
+        final CompletableFuture<V> result = new CompletableFuture<>();
+        CompletableFuture<V> load;
+        int waiters;
+        boolean abandoned;
+
+        /** A future for one more caller, or null if every earlier caller already gave up. */
+        synchronized CompletableFuture<V> join() {
+            if (abandoned) return null;
+            waiters++;
+            CompletableFuture<V> mine = new CompletableFuture<>();
+            result.whenComplete((value, error) -> {
+                if (error != null) {
+                    mine.completeExceptionally(error);
+                } else {
+                    mine.complete(value);
+                }
+            });
+            mine.whenComplete((value, error) -> {
+                if (mine.isCancelled()) leave();
+            });
+            return mine;
+        }
+
+        private void leave() {
+            CompletableFuture<V> toCancel;
+            synchronized (this) {
+                if (--waiters > 0 || result.isDone()) return;
+                abandoned = true;
+                toCancel = load;
+            }
+            if (toCancel != null) {
+                toCancel.cancel(true);
+            }
+        }
+
+        synchronized void started(CompletableFuture<V> load) {
+            this.load = load;
+            if (abandoned) load.cancel(true);
+        }
+    }
+
+    private final int maxEntries;
+    private final Map<String, Entry<V>> entries;
+    private final ConcurrentMap<String, Flight<V>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    ResponseCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        // Access-ordered LinkedHashMap gives us LRU eviction for free
+        this.entries = new LinkedHashMap<String, Entry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry<V>> eldest) {
+                if (size() > ResponseCache.this.maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /** Normalizes a city name into a cache key ("  new   YORK " -> "new york"). */
+    static String normalize(String city) {
+        return city == null ? "" : city.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Returns the cached value for key, or starts loader once for all concurrent callers.
+     * Callers that miss while a load is running share its result.
+     */
+    CompletableFuture<V> getAsync(String key, long ttlMillis, Supplier<CompletableFuture<V>> loader) {
+        return getAsync(key, value -> ttlMillis, loader);
+    }
+
+    /** Variant whose TTL depends on the loaded value (e.g. on the observation time it carries). */
+    CompletableFuture<V> getAsync(String key, ToLongFunction<V> ttlMillis, Supplier<CompletableFuture<V>> loader) {
+        V cached = lookup(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        Flight<V> flight = new Flight<>();
+        CompletableFuture<V> mine = flight.join();
+        Flight<V> existing;
+        while ((existing = inFlight.putIfAbsent(key, flight)) != null) {
+            CompletableFuture<V> joined = existing.join();
+            if (joined != null) {
+                coalesced.incrementAndGet();
+                return joined;
+            }
+            inFlight.remove(key, existing); // all of its callers cancelled; start afresh
+        }
+        misses.incrementAndGet();
+
+        CompletableFuture<V> load;
+        try {
+            load = loader.get();
+        } catch (RuntimeException e) {
+            load = new CompletableFuture<>();
+            load.completeExceptionally(e);
+        }
+        load.whenComplete((value, error) -> {
+            if (error == null && value != null) {
+                put(key, value, ttlMillis.applyAsLong(value));
+            }
+            inFlight.remove(key, flight);
+            if (error != null) {
+                flight.result.completeExceptionally(error);
+            } else {
+                flight.result.complete(value);
+            }
+        });
+        flight.started(load);
+        return mine;
+    }
+
+    V lookup(String key) {
+        synchronized (entries) {
+            Entry<V> e = entries.get(key);
+            if (e == null) return null;
+            if (e.expiresAt <= System.currentTimeMillis()) {
+                entries.remove(key);
+                return null;
+            }
+            return e.value;
+        }
+    }
+
+    void put(String key, V value, long ttlMillis) {
+        synchronized (entries) {
+            entries.put(key, new Entry<>(value, System.currentTimeMillis() + ttlMillis));
+        }
+    }
+
+    long getHits() { return hits.get(); }
+    long getMisses() { return misses.get(); }
+    long getCoalesced() { return coalesced.get(); }
+    long getEvictions() { return evictions.get(); }
+
+    @Override
+    public String toString() {
+        long h = hits.get(), m = misses.get(), c = coalesced.get();
+        long total = h + m + c;
+        double hitRate = total == 0 ? 0 : 100.0 * (h + c) / total;
+        return String.format("hits=%d misses=%d coalesced=%d evictions=%d (%.0f%% served without a new call)",
+                             h, m, c, evictions.get(), hitRate);
+    }
+}
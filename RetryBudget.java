@@ -0,0 +1,40 @@
+/**
+ * Caps retries across all calls so that an upstream in trouble is not hit with a
+ * multiple of the normal load. Every first attempt deposits ratio tokens and every
+ * retry spends one, so retries stay within about ratio of the traffic; a trickle of
+ * minPerSecond tokens lets a client that makes few calls still retry now and then.
+ * The balance never exceeds maxTokens, so a long quiet spell cannot fund a storm.
+ */
+final class RetryBudget {
+    private final double ratio;
+    private final double minPerSecond;
+    private final double maxTokens;
+    private double tokens;
+    private long refilledAt = System.nanoTime();
+
+    RetryBudget(double ratio, double minPerSecond, double maxTokens) {
+        this.ratio = ratio;
+        this.minPerSecond = minPerSecond;
+        this.maxTokens = maxTokens;
+        this.tokens = maxTokens;
+    }
+
+    synchronized void onRequest() {
+        refill();
+        tokens = Math.min(maxTokens, tokens + ratio);
+    }
+
+    /** Takes one token for a retry; false if the budget is spent. */
+    synchronized boolean tryRetry() {
+        refill();
+        if (tokens < 1) return false;
+        tokens -= 1;
+        return true;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(maxTokens, tokens + (now - refilledAt) / 1e9 * minPerSecond);
+        refilledAt = now;
+    }
+}
@@ -0,0 +1,45 @@
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors shared by the engine and the server entry points.
+ * Virtual threads are used when the running JDK has them (21+); the code is still
+ * compiled against 17, so they are looked up reflectively and a cached pool of
+ * daemon platform threads stands in on older runtimes.
+ */
+final class ThreadPools {
+    private ThreadPools() {
+    }
+
+    /** One new (virtual if possible) thread per task; suited to work that mostly blocks on I/O. */
+    static ExecutorService newPerTaskExecutor(String name) {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(daemonThreads(name));
+        }
+    }
+
+    /** True if {@link #newPerTaskExecutor(String)} hands out virtual threads on this JDK. */
+    static boolean hasVirtualThreads() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    static ThreadFactory daemonThreads(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, name + "-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
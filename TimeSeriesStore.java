@@ -0,0 +1,746 @@
+import java.io.*;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * History of every observation the engine has seen, per city, for trend analysis.
+ *
+ * Each city has a directory of append-only segment files, each memory-mapped:
+ *   [64-byte header: int magic, int version, int recordSize, int capacity]
+ *   [up to capacity fixed-width 40-byte records]
+ * A new segment file holds 64 records and is grown and remapped at twice the size
+ * whenever a writer reaches its end.
+ * A record is observedAt (epoch seconds) followed by temperature, feels-like,
+ * humidity, wind speed, pressure and visibility as floats and the weather id.
+ *
+ * Writers reserve a slot with an atomic increment, fill it, and publish it by
+ * storing observedAt last with release semantics; a slot whose observedAt is
+ * still 0 is skipped by readers. Only rolling over to a new segment, once per
+ * capacity records, and opening a city on its first use are coordinated between
+ * writers, and only between writers of the same city.
+ * A sparse index keeps the min and max observedAt of every 64 records so range
+ * scans only touch matching blocks, and reads go straight to the mapped pages.
+ *
+ * Once a segment is full it is rewritten in the compressed HistoryCodec format
+ * (about a sixth of the size) and the mapped file is deleted. This runs on a
+ * background thread, so the append that fills a segment only creates the next one.
+ * Whole segments older than the retention period (-Dweather.history.retentionDays,
+ * default 90) are deleted.
+ *
+ * A city is only kept open, with its segments mapped, while it is in use: one not
+ * read or written for -Dweather.history.idleMinutes (15), or the least recently used
+ * beyond -Dweather.history.openCities (32), is flushed and dropped until next needed.
+ * That sweep runs on the background thread every minute, and as soon as a newly
+ * opened city takes the count past the limit.
+ */
+final class TimeSeriesStore implements AutoCloseable {
+    /**
+     * Read-only view of one record, valid only inside {@link Visitor#visit}. Reads
+     * either the mapped pages of a live segment or the decoder of a compressed one.
+     */
+    static final class Cursor {
+        private MappedByteBuffer buffer;
+        private int offset;
+        private HistoryCodec.Decoder decoded;
+
+        long observedAt() {
+            return decoded != null ? decoded.observedAt() : buffer.getLong(offset);
+        }
+
+        float temperature() {
+            return decoded != null ? (float) decoded.temperature() : buffer.getFloat(offset + 8);
+        }
+
+        float feelsLike() {
+            return decoded != null ? (float) decoded.feelsLike() : buffer.getFloat(offset + 12);
+        }
+
+        float humidity() {
+            return decoded != null ? (float) decoded.humidity() : buffer.getFloat(offset + 16);
+        }
+
+        float windSpeed() {
+            return decoded != null ? (float) decoded.windSpeed() : buffer.getFloat(offset + 20);
+        }
+
+        float pressure() {
+            return decoded != null ? (float) decoded.pressure() : buffer.getFloat(offset + 24);
+        }
+
+        float visibility() {
+            return decoded != null ? (float) decoded.visibility() : buffer.getFloat(offset + 28);
+        }
+
+        int weatherId() {
+            return decoded != null ? decoded.weatherId() : buffer.getInt(offset + 32);
+        }
+    }
+
+    interface Visitor {
+        void visit(Cursor record);
+    }
+
+    static final int RECORD_SIZE = 40;
+    private static final int HEADER_SIZE = 64;
+    private static final int MAGIC = 0x57535453; // "WSTS"
+    private static final int VERSION = 1;
+    private static final int BLOCK = 64; // records per sparse index entry
+    private static final String SUFFIX = ".seg";
+    private static final String ARCHIVE_SUFFIX = ".wsh";
+
+    // 4096 records hold about four weeks of 10-minute observations
+    private static final int SEGMENT_RECORDS = Integer.getInteger("weather.history.segmentRecords", 4096);
+    private static final long RETENTION_SECONDS =
+        TimeUnit.DAYS.toSeconds(Long.getLong("weather.history.retentionDays", 90));
+    private static final int OPEN_CITIES = Integer.getInteger("weather.history.openCities", 32);
+    private static final long IDLE_MS = TimeUnit.MINUTES.toMillis(Long.getLong("weather.history.idleMinutes", 15));
+    private static final int INITIAL_RECORDS = BLOCK;
+    // A full segment is compressed once writers that reserved its last slots have published them
+    private static final long ARCHIVE_RETRY_MS = 10;
+    private static final int ARCHIVE_RETRIES = 100;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private final Path dir;
+    // Open series; the first user of a city opens it, later ones wait on the same future
+    private final ConcurrentMap<String, CompletableFuture<Series>> series = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService archiver =
+        Executors.newSingleThreadScheduledExecutor(ThreadPools.daemonThreads("weather-history"));
+    private final AtomicBoolean sweepQueued = new AtomicBoolean();
+
+    private TimeSeriesStore(Path dir) {
+        this.dir = dir;
+        if (dir != null) {
+            archiver.scheduleWithFixedDelay(this::evictIdle, 1, 1, TimeUnit.MINUTES);
+        }
+    }
+
+    /** Opens the store under the cache directory (-Dweather.cacheDir)/history; disabled on error. */
+    static TimeSeriesStore openDefault() {
+        String base = System.getProperty("weather.cacheDir",
+                                         System.getProperty("user.home") + File.separator + ".weather-station");
+        Path dir = Paths.get(base, "history");
+        try {
+            Files.createDirectories(dir);
+        } catch (IOException e) {
+            System.err.println("History disabled: " + e.getMessage());
+            return new TimeSeriesStore(null);
+        }
+        return new TimeSeriesStore(dir);
+    }
+
+    /**
+     * Stores an observation unless one at the same or a later time is already stored
+     * for city, so repeated refreshes of the same reading are kept once.
+     * Returns true if a record was written.
+     */
+    boolean append(String city, WeatherData data) {
+        if (dir == null || data == null || data.observedAt <= 0) return false;
+        Series s = null;
+        try {
+            s = pin(ResponseCache.normalize(city), true);
+            for (long last = s.lastObservedAt.get(); ; last = s.lastObservedAt.get()) {
+                if (data.observedAt <= last) return false;
+                if (s.lastObservedAt.compareAndSet(last, data.observedAt)) break;
+            }
+            while (true) {
+                Segment head = s.head.get();
+                int slot = head.reserve();
+                if (slot >= 0) {
+                    head.write(slot, data);
+                    return true;
+                }
+                s.head.compareAndSet(head, successor(s, head));
+            }
+        } catch (UncheckedIOException | CompletionException e) {
+            System.err.println("History write failed for " + city + ": " + e.getCause());
+            return false;
+        } finally {
+            if (s != null) s.unpin();
+        }
+    }
+
+    /**
+     * Visits the records of city observed in [fromSeconds, toSeconds), oldest segment
+     * first and in write order within a segment. Returns the number of records visited.
+     */
+    int scan(String city, long fromSeconds, long toSeconds, Visitor visitor) {
+        Series s = existingSeries(city);
+        if (s == null) return 0;
+        try {
+            Cursor cursor = new Cursor();
+            int visited = 0;
+            // Snapshot the live segments first: one compressed after this point is read live, not twice
+            List<Segment> live = List.copyOf(s.segments);
+            long firstLive = live.isEmpty() ? Long.MAX_VALUE : live.get(0).seq;
+            for (Archive archive : s.archives) {
+                if (archive.seq >= firstLive) break;
+                try {
+                    visited += archive.scan(fromSeconds, toSeconds, cursor, visitor);
+                } catch (IOException e) {
+                    System.err.println("History archive unreadable: " + archive.file + " (" + e.getMessage() + ")");
+                }
+            }
+            for (Segment segment : live) {
+                visited += segment.scan(fromSeconds, toSeconds, cursor, visitor);
+            }
+            return visited;
+        } finally {
+            s.unpin();
+        }
+    }
+
+    /**
+     * Writes the records of city observed in [fromSeconds, toSeconds) to out as one
+     * HistoryCodec stream and closes out. Returns the number of records written.
+     */
+    long export(String city, long fromSeconds, long toSeconds, OutputStream out) throws IOException {
+        try (HistoryCodec.Encoder encoder = new HistoryCodec.Encoder(out)) {
+            scan(city, fromSeconds, toSeconds, r -> {
+                try {
+                    encoder.add(r.observedAt(), r.temperature(), r.feelsLike(), r.humidity(),
+                                r.windSpeed(), r.pressure(), r.visibility(), r.weatherId());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            return encoder.records();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /** Cities with stored history, as normalized names. */
+    Set<String> cities() {
+        Set<String> names = new TreeSet<>(series.keySet());
+        if (dir == null) return names;
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(dir, Files::isDirectory)) {
+            for (Path p : dirs) {
+                names.add(URLDecoder.decode(p.getFileName().toString(), StandardCharsets.UTF_8));
+            }
+        } catch (IOException e) {
+            System.err.println("History listing failed: " + e.getMessage());
+        }
+        return names;
+    }
+
+    /** Finishes pending compression (for up to 5 s) and flushes the mapped pages to disk. */
+    @Override
+    public void close() {
+        archiver.shutdown();
+        try {
+            archiver.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (CompletableFuture<Series> opened : series.values()) {
+            Series s = opened.getNow(null);
+            if (s != null) flush(s);
+        }
+    }
+
+    /** The series of city, pinned, if it has any history; the caller unpins it. */
+    private Series existingSeries(String city) {
+        if (dir == null) return null;
+        try {
+            return pin(ResponseCache.normalize(city), false);
+        } catch (UncheckedIOException | CompletionException e) {
+            System.err.println("History unreadable for " + city + ": " + e.getCause());
+            return null;
+        }
+    }
+
+    /**
+     * The open series for key, opened first if needed; null if it has no directory and
+     * create is false. A pinned series is not evicted until every pin is released.
+     */
+    private Series pin(String key, boolean create) {
+        while (true) {
+            CompletableFuture<Series> opened = series.get(key);
+            if (opened == null) {
+                if (!create && !Files.isDirectory(cityDir(key))) return null;
+                CompletableFuture<Series> mine = new CompletableFuture<>();
+                opened = series.putIfAbsent(key, mine);
+                if (opened == null) {
+                    opened = mine;
+                    try {
+                        mine.complete(openSeries(key));
+                    } catch (UncheckedIOException e) {
+                        series.remove(key, mine); // let a later call try again
+                        mine.completeExceptionally(e);
+                    }
+                    if (series.size() > OPEN_CITIES && sweepQueued.compareAndSet(false, true)) {
+                        try {
+                            archiver.execute(this::evictIdle);
+                        } catch (RejectedExecutionException e) {
+                            // closing
+                        }
+                    }
+                }
+            }
+            Series s = opened.join();
+            if (s.pin()) return s;
+            series.remove(key, opened); // evicted under us; open it afresh
+        }
+    }
+
+    // Runs on the archiver. Dropped series are flushed here; their pages are unmapped once unreachable
+    private void evictIdle() {
+        sweepQueued.set(false);
+        long now = System.currentTimeMillis();
+        List<Series> open = new ArrayList<>();
+        for (CompletableFuture<Series> opened : series.values()) {
+            Series s = opened.getNow(null);
+            if (s != null && !opened.isCompletedExceptionally()) {
+                s.idleSince = s.lastUsed; // fixed for the sort, since pins keep moving lastUsed
+                open.add(s);
+            }
+        }
+        open.sort(Comparator.comparingLong(s -> s.idleSince));
+        int excess = open.size() - OPEN_CITIES;
+        for (Series s : open) {
+            if (excess <= 0 && now - s.idleSince < IDLE_MS) break; // the rest were used more recently
+            if (s.evict()) {
+                series.computeIfPresent(s.key, (key, opened) -> opened.getNow(null) == s ? null : opened);
+                flush(s);
+                excess--;
+            }
+        }
+    }
+
+    private static void flush(Series s) {
+        for (Segment segment : s.segments) {
+            segment.buffer.force();
+        }
+    }
+
+    private Path cityDir(String key) {
+        return dir.resolve(URLEncoder.encode(key, StandardCharsets.UTF_8).replace(".", "%2E"));
+    }
+
+    private Series openSeries(String key) {
+        Path cityDir = cityDir(key);
+        try {
+            Files.createDirectories(cityDir);
+            Series s = new Series(key, cityDir);
+            Set<Long> archived = new HashSet<>();
+            for (Path file : list(cityDir, ARCHIVE_SUFFIX)) {
+                Archive archive = Archive.open(file);
+                s.archives.add(archive);
+                archived.add(archive.seq);
+            }
+            long nextSeq = 0;
+            for (Path file : list(cityDir, SUFFIX)) {
+                long seq = seq(file);
+                nextSeq = Math.max(nextSeq, seq + 1);
+                if (archived.contains(seq)) {
+                    Files.deleteIfExists(file); // archived, but the delete did not happen
+                } else {
+                    s.segments.add(Segment.open(file));
+                }
+            }
+            for (Archive archive : s.archives) {
+                nextSeq = Math.max(nextSeq, archive.seq + 1);
+            }
+            if (s.segments.isEmpty()) {
+                s.segments.add(Segment.create(cityDir, nextSeq));
+            }
+            long last = 0;
+            for (Segment segment : s.segments) {
+                last = Math.max(last, segment.maxObservedAt());
+            }
+            for (Archive archive : s.archives) {
+                last = Math.max(last, archive.maxObservedAt);
+            }
+            s.lastObservedAt.set(last);
+            // Only the newest segment takes writes; older full ones are compressed in the background
+            Segment head = s.segments.get(s.segments.size() - 1);
+            s.head.set(head);
+            for (Segment segment : s.segments) {
+                if (segment != head) compressLater(s, segment);
+            }
+            dropExpired(s);
+            return s;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** The segment after full; exactly one writer creates it, the others wait for it. */
+    private Segment successor(Series s, Segment full) {
+        while (true) {
+            CompletableFuture<Segment> next = full.successor.get();
+            if (next != null) return next.join();
+            CompletableFuture<Segment> mine = new CompletableFuture<>();
+            if (!full.successor.compareAndSet(null, mine)) continue;
+            Segment created;
+            try {
+                created = Segment.create(s.dir, full.seq + 1);
+                s.segments.add(created);
+            } catch (IOException e) {
+                full.successor.set(null); // let a later append try again
+                mine.completeExceptionally(new UncheckedIOException(e));
+                return mine.join();
+            }
+            mine.complete(created);
+            compressLater(s, full);
+            return created;
+        }
+    }
+
+    /** Queues a full segment for compression; the series is not evicted until it is done. */
+    private void compressLater(Series s, Segment full) {
+        s.pending.incrementAndGet();
+        compressLater(s, full, 0, ARCHIVE_RETRIES);
+    }
+
+    private void compressLater(Series s, Segment full, long delayMillis, int retries) {
+        try {
+            archiver.schedule(() -> compress(s, full, retries), delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            s.pending.decrementAndGet(); // closing; compressed when the city is next opened
+        }
+    }
+
+    // Runs on the archiver
+    private void compress(Series s, Segment full, int retries) {
+        if (full.published.get() < Math.min(full.reserved.get(), full.capacity) && retries > 0) {
+            compressLater(s, full, ARCHIVE_RETRY_MS, retries - 1);
+            return;
+        }
+        try {
+            if (s.segments.contains(full)) { // not dropped as expired meanwhile
+                archive(s, full);
+            }
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("History compression failed, keeping " + full.file + ": " + e.getMessage());
+            full.buffer.force();
+        } finally {
+            dropExpired(s);
+            s.pending.decrementAndGet();
+        }
+    }
+
+    /** Rewrites a full segment as a compressed archive and deletes the mapped file. */
+    private void archive(Series s, Segment full) throws IOException {
+        Path file = s.dir.resolve(String.format("%012d%s", full.seq, ARCHIVE_SUFFIX));
+        Path tmp = s.dir.resolve(file.getFileName() + ".tmp");
+        try (HistoryCodec.Encoder encoder = new HistoryCodec.Encoder(
+                 new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            Cursor cursor = new Cursor();
+            full.scan(Long.MIN_VALUE, Long.MAX_VALUE, cursor, r -> {
+                try {
+                    encoder.add(r.observedAt(), r.temperature(), r.feelsLike(), r.humidity(),
+                                r.windSpeed(), r.pressure(), r.visibility(), r.weatherId());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        s.archives.add(Archive.open(file));
+        s.segments.remove(full);
+        try {
+            Files.deleteIfExists(full.file);
+        } catch (IOException e) {
+            System.err.println("History cleanup failed: " + e.getMessage()); // removed on the next open
+        }
+    }
+
+    private static List<Path> list(Path dir, String suffix) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + suffix)) {
+            stream.forEach(files::add);
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    private static long seq(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.indexOf('.')));
+    }
+
+    private void dropExpired(Series s) {
+        long cutoff = System.currentTimeMillis() / 1000 - RETENTION_SECONDS;
+        Segment head = s.head.get();
+        Segment newest = s.segments.get(s.segments.size() - 1);
+        for (Segment segment : s.segments) {
+            if (segment != head && segment != newest && segment.maxObservedAt() < cutoff) {
+                s.segments.remove(segment);
+                delete(segment.file);
+            }
+        }
+        for (Archive archive : s.archives) {
+            if (archive.maxObservedAt < cutoff) {
+                s.archives.remove(archive);
+                delete(archive.file);
+            }
+        }
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            System.err.println("History cleanup failed: " + e.getMessage());
+        }
+    }
+
+    private static final class Series {
+        final String key;
+        final Path dir;
+        final List<Archive> archives = new CopyOnWriteArrayList<>(); // compressed, oldest first
+        final List<Segment> segments = new CopyOnWriteArrayList<>(); // live, oldest first
+        final AtomicReference<Segment> head = new AtomicReference<>();
+        final AtomicLong lastObservedAt = new AtomicLong();
+        final AtomicInteger pending = new AtomicInteger(); // segments queued for compression
+        final AtomicInteger users = new AtomicInteger(); // pins, or -1 once evicted
+        volatile long lastUsed = System.currentTimeMillis();
+        long idleSince; // lastUsed as of the current sweep; archiver only
+
+        Series(String key, Path dir) {
+            this.key = key;
+            this.dir = dir;
+        }
+
+        /** False once the series has been evicted; the caller must open the city again. */
+        boolean pin() {
+            for (int n = users.get(); n >= 0; n = users.get()) {
+                if (users.compareAndSet(n, n + 1)) return true;
+            }
+            return false;
+        }
+
+        void unpin() {
+            lastUsed = System.currentTimeMillis();
+            users.decrementAndGet();
+        }
+
+        /** Closes the series to new pins if it has none and nothing queued for compression. */
+        boolean evict() {
+            // pending only grows under a pin, so once users is -1 it stays 0
+            return pending.get() == 0 && users.compareAndSet(0, -1);
+        }
+    }
+
+    private static final class Segment {
+        final Path file;
+        final long seq;
+        final int capacity;
+        volatile MappedByteBuffer buffer; // replaced by a larger mapping of the same file as it fills
+        final AtomicInteger reserved;
+        final AtomicInteger published;
+        final AtomicLongArray blockMin;
+        final AtomicLongArray blockMax;
+        final AtomicReference<CompletableFuture<Segment>> successor = new AtomicReference<>();
+
+        private Segment(Path file, long seq, int capacity, MappedByteBuffer buffer, int used) {
+            this.file = file;
+            this.seq = seq;
+            this.capacity = capacity;
+            this.buffer = buffer;
+            this.reserved = new AtomicInteger(used);
+            this.published = new AtomicInteger(used);
+            int blocks = (capacity + BLOCK - 1) / BLOCK;
+            blockMin = new AtomicLongArray(blocks);
+            blockMax = new AtomicLongArray(blocks);
+            for (int b = 0; b < blocks; b++) {
+                blockMin.set(b, Long.MAX_VALUE);
+                blockMax.set(b, Long.MIN_VALUE);
+            }
+        }
+
+        static Segment create(Path dir, long seq) throws IOException {
+            Path file = dir.resolve(String.format("%012d%s", seq, SUFFIX));
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                                                   StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer buffer = ch.map(FileChannel.MapMode.READ_WRITE, 0,
+                                                 HEADER_SIZE + (long) Math.min(INITIAL_RECORDS, SEGMENT_RECORDS) * RECORD_SIZE);
+                buffer.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, RECORD_SIZE).putInt(12, SEGMENT_RECORDS);
+                return new Segment(file, seq, SEGMENT_RECORDS, buffer, 0);
+            }
+        }
+
+        /** Maps an existing segment and rebuilds its index; slots after the last published record are reused. */
+        static Segment open(Path file) throws IOException {
+            long seq = seq(file);
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                if (ch.size() < HEADER_SIZE) {
+                    throw new IOException("Not a history segment: " + file);
+                }
+                MappedByteBuffer buffer = ch.map(FileChannel.MapMode.READ_WRITE, 0, ch.size());
+                if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getInt(8) != RECORD_SIZE
+                    || buffer.getInt(12) <= 0) {
+                    throw new IOException("Not a history segment: " + file);
+                }
+                int capacity = buffer.getInt(12);
+                int mapped = Math.min(capacity, mappedRecords(buffer));
+                int used = 0;
+                for (int i = 0; i < mapped; i++) {
+                    if (buffer.getLong(offset(i)) != 0) used = i + 1;
+                }
+                Segment segment = new Segment(file, seq, capacity, buffer, used);
+                for (int i = 0; i < used; i++) {
+                    segment.index(i, buffer.getLong(offset(i)));
+                }
+                return segment;
+            }
+        }
+
+        static int offset(int slot) {
+            return HEADER_SIZE + slot * RECORD_SIZE;
+        }
+
+        static int mappedRecords(MappedByteBuffer buffer) {
+            return (buffer.capacity() - HEADER_SIZE) / RECORD_SIZE;
+        }
+
+        /** A mapping that covers slot, doubling the file (up to capacity) if it does not reach that far yet. */
+        MappedByteBuffer mapping(int slot) {
+            MappedByteBuffer current = buffer;
+            if (slot < mappedRecords(current)) return current;
+            synchronized (this) {
+                current = buffer;
+                int records = mappedRecords(current);
+                if (slot < records) return current;
+                while (records <= slot) {
+                    records = Math.min(capacity, Math.max(INITIAL_RECORDS, records * 2));
+                }
+                try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    // Writes through the old mapping still land in the file; it goes once unreachable
+                    buffer = ch.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) records * RECORD_SIZE);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return buffer;
+            }
+        }
+
+        /** A free slot, or -1 once the segment is full. */
+        int reserve() {
+            if (reserved.get() >= capacity) return -1;
+            int slot = reserved.getAndIncrement();
+            return slot < capacity ? slot : -1;
+        }
+
+        void write(int slot, WeatherData data) {
+            MappedByteBuffer buffer = mapping(slot);
+            int off = offset(slot);
+            buffer.putFloat(off + 8, (float) data.temperature);
+            buffer.putFloat(off + 12, (float) data.feelsLike);
+            buffer.putFloat(off + 16, (float) data.humidity);
+            buffer.putFloat(off + 20, (float) data.windSpeed);
+            buffer.putFloat(off + 24, (float) data.pressure);
+            buffer.putFloat(off + 28, (float) data.visibility);
+            buffer.putInt(off + 32, data.weatherId);
+            index(slot, data.observedAt);
+            LONGS.setRelease(buffer, off, data.observedAt); // publishes the record
+            published.incrementAndGet();
+        }
+
+        void index(int slot, long observedAt) {
+            blockMin.accumulateAndGet(slot / BLOCK, observedAt, Math::min);
+            blockMax.accumulateAndGet(slot / BLOCK, observedAt, Math::max);
+        }
+
+        long maxObservedAt() {
+            long max = Long.MIN_VALUE;
+            for (int b = 0; b < blockMax.length(); b++) {
+                max = Math.max(max, blockMax.get(b));
+            }
+            return max;
+        }
+
+        int scan(long from, long to, Cursor cursor, Visitor visitor) {
+            MappedByteBuffer buffer = this.buffer;
+            int end = Math.min(Math.min(reserved.get(), capacity), mappedRecords(buffer));
+            int visited = 0;
+            for (int b = 0; b * BLOCK < end; b++) {
+                if (blockMax.get(b) < from || blockMin.get(b) >= to) continue;
+                for (int slot = b * BLOCK, blockEnd = Math.min(end, slot + BLOCK); slot < blockEnd; slot++) {
+                    long t = (long) LONGS.getAcquire(buffer, offset(slot));
+                    if (t != 0 && t >= from && t < to) {
+                        cursor.buffer = buffer;
+                        cursor.offset = offset(slot);
+                        visitor.visit(cursor);
+                        visited++;
+                    }
+                }
+            }
+            return visited;
+        }
+    }
+
+    /** A full segment after compression; only its time range stays in memory. */
+    private static final class Archive {
+        final Path file;
+        final long seq;
+        final long minObservedAt;
+        final long maxObservedAt;
+
+        private Archive(Path file, long seq, long minObservedAt, long maxObservedAt) {
+            this.file = file;
+            this.seq = seq;
+            this.minObservedAt = minObservedAt;
+            this.maxObservedAt = maxObservedAt;
+        }
+
+        /** Reads the block headers for the time range, skipping the payloads. */
+        static Archive open(Path file) throws IOException {
+            long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                if (in.readInt() != HistoryCodec.MAGIC || in.readByte() != HistoryCodec.VERSION) {
+                    throw new IOException("Not a history archive: " + file);
+                }
+                for (int length = in.readInt(); length != 0; length = in.readInt()) {
+                    in.readInt(); // count
+                    min = Math.min(min, in.readLong());
+                    max = Math.max(max, in.readLong());
+                    in.skipNBytes(length);
+                }
+            }
+            return new Archive(file, seq(file), min, max);
+        }
+
+        int scan(long from, long to, Cursor cursor, Visitor visitor) throws IOException {
+            if (maxObservedAt < from || minObservedAt >= to) return 0;
+            int visited = 0;
+            try (HistoryCodec.Decoder decoder = new HistoryCodec.Decoder(
+                     new BufferedInputStream(Files.newInputStream(file)), from, to)) {
+                cursor.decoded = decoder;
+                while (decoder.next()) {
+                    long t = decoder.observedAt();
+                    if (t >= from && t < to) {
+                        visitor.visit(cursor);
+                        visited++;
+                    }
+                }
+            } finally {
+                cursor.decoded = null;
+            }
+            return visited;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+/** Current conditions for one city, as returned by the /weather endpoint (metric units). */
+class WeatherData {
+    double temperature, feelsLike, humidity, windSpeed, pressure, visibility;
+    int weatherId;
+    String description, sunrise, sunset;
+    int cityId; // OpenWeatherMap city ID, 0 if unknown
+    long observedAt; // "dt" of the observation, epoch seconds (0 if unknown)
+    int utcOffset; // the city's "timezone", seconds east of UTC
+    String name; // the place the upstream reported, may differ from the query
+    double lat = Double.NaN, lon = Double.NaN; // "coord" of the place, NaN if unknown
+    
+    public WeatherData(double temperature, double feelsLike, double humidity, 
+                      double windSpeed, double pressure, double visibility,
+                      int weatherId, String description, String sunrise, String sunset) {
+        this.temperature = temperature;
+        this.feelsLike = feelsLike;
+        this.humidity = humidity;
+        this.windSpeed = windSpeed;
+        this.pressure = pressure;
+        this.visibility = visibility;
+        this.weatherId = weatherId;
+        this.description = description;
+        this.sunrise = sunrise;
+        this.sunset = sunset;
+    }
+}
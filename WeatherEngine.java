@@ -0,0 +1,91 @@
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Headless weather engine: fetching, parsing, caching and refresh scheduling,
+ * with no dependency on AWT or Swing. The desktop window is one consumer;
+ * servers, batch jobs and load tests can use it directly.
+ * All async results complete on engine threads, never on the EDT.
+ */
+interface WeatherEngine extends AutoCloseable {
+
+    /** True if no API key is configured; every fetch then completes with no data. */
+    boolean isApiKeyMissing();
+
+    /** Current weather and forecast for city, fetched concurrently, for someone waiting on it. */
+    default CompletableFuture<WeatherSnapshot> fetchSnapshotAsync(String city) {
+        return fetchSnapshotAsync(city, QuotaLimiter.Priority.INTERACTIVE);
+    }
+
+    /** Like {@link #fetchSnapshotAsync(String)}; BACKGROUND calls give way to interactive ones and may be shed near the quota. */
+    CompletableFuture<WeatherSnapshot> fetchSnapshotAsync(String city, QuotaLimiter.Priority priority);
+
+    /** Completes with null if the city is unknown, exceptionally if the call failed. */
+    CompletableFuture<WeatherData> fetchWeatherAsync(String city);
+
+    /** Completes with an empty list if the forecast could not be fetched. */
+    CompletableFuture<List<ForecastData>> fetchForecastAsync(String city);
+
+    /** Every 3-hourly forecast point for city; completes with null if it could not be fetched. */
+    CompletableFuture<ForecastSeries> fetchForecastSeriesAsync(String city);
+
+    /** Current weather for many cities, batched where possible; unavailable cities map to null. */
+    default CompletableFuture<Map<String, WeatherData>> fetchManyAsync(Collection<String> cities) {
+        return fetchManyAsync(cities, QuotaLimiter.Priority.INTERACTIVE);
+    }
+
+    /** Like {@link #fetchManyAsync(Collection)} at the given quota priority. */
+    CompletableFuture<Map<String, WeatherData>> fetchManyAsync(Collection<String> cities, QuotaLimiter.Priority priority);
+
+    /** Last weather saved for city by a previous run, or null. */
+    WeatherData cachedWeather(String city);
+
+    /** Last forecast saved for city by a previous run, or an empty list. */
+    List<ForecastData> cachedForecast(String city);
+
+    /** Current weather nearest to a point; points close together share one upstream call. Null if none. */
+    CompletableFuture<WeatherData> fetchWeatherAtAsync(double lat, double lon);
+
+    /**
+     * Current weather across a box, one observation per grid cell (fewer where cells share a
+     * place). Cells with a fresh observation from any earlier call cost nothing; the rest are
+     * fetched. Fails with IllegalArgumentException if the box is malformed or spans too many cells.
+     */
+    CompletableFuture<List<WeatherData>> fetchAreaAsync(double south, double west, double north, double east);
+
+    /** Like {@link #fetchAreaAsync} for the cells within radiusKm of a point. */
+    CompletableFuture<List<WeatherData>> fetchNearAsync(double lat, double lon, double radiusKm);
+
+    /** When the saved weather for city was fetched (epoch millis), or 0. */
+    long cachedWeatherTime(String city);
+
+    /** The bulk city list for autocomplete and suggestions; empty until loaded or if none is installed. */
+    CityIndex cityIndex();
+
+    /** Every observation fetched so far, per city, kept across runs. */
+    TimeSeriesStore history();
+
+    /**
+     * Creates a (not yet started) scheduler that keeps the city returned by city fresh.
+     * onUpdate receives every successful refresh; listener hears about each planned delay.
+     */
+    RefreshScheduler scheduleRefresh(Supplier<String> city, BiConsumer<String, WeatherSnapshot> onUpdate,
+                                     RefreshScheduler.Listener listener);
+
+    /** Human readable cache counters. */
+    String cacheStats();
+
+    /** Stage latencies and counters of this engine; the UI and the server add their own stages. */
+    Metrics metrics();
+
+    /** What is left of the API key's per-minute and per-day budgets, live. */
+    QuotaLimiter quota();
+
+    /** Stops engine threads; pending futures may never complete afterwards. */
+    @Override
+    void close();
+}
@@ -0,0 +1,244 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Push-based access to an engine: consumers subscribe to a city instead of polling it.
+ * - Every watched city has one RefreshScheduler, started by its first subscriber and
+ *   closed when the last one cancels, so N subscribers cost one upstream call per refresh.
+ *   All of them share one timer thread
+ * - At most -Dweather.feed.maxCities (256) cities are watched at once; subscribing to
+ *   another ends that subscription with IllegalStateException
+ * - Each refresh is offered to all subscribers through a SubmissionPublisher; a
+ *   subscriber only sees it if something changed, and then only the changed fields
+ * - Backpressure is per subscriber: one that requests nothing more gets up to
+ *   -Dweather.feed.buffer (16) updates queued, further ones are dropped for it alone.
+ *   Changes are worked out against what that subscriber last received, so after a
+ *   drop its next update still brings it fully up to date
+ * - A new subscriber to a city that is already watched gets the latest observation
+ *   straight away, without another upstream call
+ * - A city the upstream does not know ends its feed with NoSuchElementException
+ * Refreshes run at background quota priority. Stale snapshots served during an
+ * outage, or when the quota sheds a refresh, are not pushed.
+ */
+final class WeatherFeeds implements AutoCloseable {
+    private static final int BUFFER = Integer.getInteger("weather.feed.buffer", 16);
+    private static final int MAX_CITIES = Integer.getInteger("weather.feed.maxCities", 256);
+
+    /** The shared state of one watched city; guarded by the WeatherFeeds lock unless noted. */
+    private static final class Feed {
+        final String key;
+        final String city;
+        final SubmissionPublisher<WeatherData> publisher;
+        RefreshScheduler refresh;
+        int subscribers;
+        boolean closed;
+        volatile WeatherData latest;
+
+        Feed(String key, String city, SubmissionPublisher<WeatherData> publisher) {
+            this.key = key;
+            this.city = city;
+            this.publisher = publisher;
+        }
+    }
+
+    private final WeatherEngine engine;
+    private final ExecutorService executor = ThreadPools.newPerTaskExecutor("weather-feed");
+    private final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, ThreadPools.daemonThreads("weather-feed-refresh"));
+    private final Map<String, Feed> feeds = new HashMap<>();
+    private boolean closed;
+
+    WeatherFeeds(WeatherEngine engine) {
+        this.engine = engine;
+        timer.setRemoveOnCancelPolicy(true); // feeds come and go; their cancelled refreshes should not linger
+        engine.metrics().gauge("feed.cities", this::cities);
+        engine.metrics().gauge("feed.subscribers", this::subscribers);
+    }
+
+    /** Updates for city; each subscription shares the city's single refresh loop. */
+    Flow.Publisher<WeatherUpdate> feed(String city) {
+        return subscriber -> subscribe(city, subscriber);
+    }
+
+    /** False if subscribing to city would be refused: the feeds are closed, or it is new and the limit is reached. */
+    synchronized boolean canWatch(String city) {
+        return !closed && (feeds.containsKey(ResponseCache.normalize(city)) || feeds.size() < MAX_CITIES);
+    }
+
+    synchronized int cities() {
+        return feeds.size();
+    }
+
+    synchronized int subscribers() {
+        int total = 0;
+        for (Feed feed : feeds.values()) {
+            total += feed.subscribers;
+        }
+        return total;
+    }
+
+    /** Completes every subscription and stops all refreshes; the engine itself stays open. */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            for (Feed feed : new ArrayList<>(feeds.values())) {
+                retire(feed);
+            }
+        }
+        timer.shutdownNow();
+        executor.shutdown();
+    }
+
+    private void subscribe(String city, Flow.Subscriber<? super WeatherUpdate> subscriber) {
+        String refused = "Feeds are closed";
+        synchronized (this) {
+            String key = ResponseCache.normalize(city);
+            Feed feed = feeds.get(key);
+            if (!closed && feed == null && feeds.size() >= MAX_CITIES) {
+                refused = "Too many cities watched (limit " + MAX_CITIES + ")";
+            } else if (!closed) {
+                if (feed == null) {
+                    feed = new Feed(key, city.trim(), new SubmissionPublisher<>(executor, BUFFER));
+                    feeds.put(key, feed);
+                }
+                feed.subscribers++;
+                feed.publisher.subscribe(new Relay(feed, subscriber));
+                if (feed.refresh == null) {
+                    feed.refresh = startRefresh(feed);
+                } else if (feed.latest != null) {
+                    // Only the newcomer sees a change; everyone else already has it
+                    offer(feed, feed.latest);
+                }
+                return;
+            }
+        }
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+        subscriber.onError(new IllegalStateException(refused));
+    }
+
+    private RefreshScheduler startRefresh(Feed feed) {
+        RefreshScheduler refresh = new RefreshScheduler(() -> engine.fetchSnapshotAsync(feed.city, QuotaLimiter.Priority.BACKGROUND)
+            .whenComplete((snapshot, error) -> {
+                if (error != null || snapshot.isStale()) return;
+                if (snapshot.weather != null) {
+                    feed.latest = snapshot.weather;
+                    offer(feed, snapshot.weather);
+                } else {
+                    synchronized (this) {
+                        retire(feed, engine.isApiKeyMissing() ? new IllegalStateException("No API key configured")
+                                                              : new NoSuchElementException("City not found: " + feed.city));
+                    }
+                }
+            }), null, timer);
+        refresh.start(0);
+        return refresh;
+    }
+
+    private void offer(Feed feed, WeatherData data) {
+        engine.metrics().increment("feed.published");
+        feed.publisher.offer(data, (subscriber, item) -> {
+            engine.metrics().increment("feed.dropped");
+            return false;
+        });
+    }
+
+    private synchronized void release(Feed feed) {
+        if (--feed.subscribers == 0) {
+            retire(feed);
+        }
+    }
+
+    private void retire(Feed feed) {
+        retire(feed, null);
+    }
+
+    private void retire(Feed feed, Throwable error) {
+        if (feed.closed) return;
+        feed.closed = true;
+        feeds.remove(feed.key, feed);
+        if (feed.refresh != null) {
+            feed.refresh.close();
+        }
+        if (error == null) {
+            feed.publisher.close();
+        } else {
+            feed.publisher.closeExceptionally(error);
+        }
+    }
+
+    /**
+     * Sits between the shared publisher and one subscriber: turns observations into
+     * per-subscriber changes and gives the feed back its subscriber count when done.
+     */
+    private final class Relay implements Flow.Subscriber<WeatherData>, Flow.Subscription {
+        private final Feed feed;
+        private final Flow.Subscriber<? super WeatherUpdate> downstream;
+        private final AtomicBoolean done = new AtomicBoolean();
+        private volatile Flow.Subscription upstream;
+        private WeatherData last; // only touched from onNext, which is never called concurrently
+
+        Relay(Feed feed, Flow.Subscriber<? super WeatherUpdate> downstream) {
+            this.feed = feed;
+            this.downstream = downstream;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            upstream = subscription;
+            downstream.onSubscribe(this);
+        }
+
+        @Override
+        public void onNext(WeatherData data) {
+            Map<String, Object> changed = WeatherUpdate.diff(last, data);
+            if (changed.isEmpty()) {
+                upstream.request(1); // nothing new for this subscriber, so its demand still stands
+                return;
+            }
+            last = data;
+            downstream.onNext(new WeatherUpdate(feed.city, data, changed));
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            if (leave()) downstream.onError(error);
+        }
+
+        @Override
+        public void onComplete() {
+            if (leave()) downstream.onComplete();
+        }
+
+        @Override
+        public void request(long n) {
+            upstream.request(n);
+        }
+
+        @Override
+        public void cancel() {
+            upstream.cancel();
+            leave();
+        }
+
+        private boolean leave() {
+            if (!done.compareAndSet(false, true)) return false;
+            release(feed);
+            return true;
+        }
+    }
+}
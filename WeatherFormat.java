@@ -0,0 +1,93 @@
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.TextStyle;
+import java.util.Locale;
+
+/**
+ * Text helpers shared by the window, the server and the benchmarks.
+ * The formatters are immutable and thread-safe, so they are built once.
+ */
+final class WeatherFormat {
+    static final int SECONDS_PER_DAY = 24 * 60 * 60;
+
+    private static final DateTimeFormatter CLOCK = DateTimeFormatter.ofPattern("hh:mm a");
+    private static final DateTimeFormatter LOCAL_CLOCK = CLOCK.withZone(ZoneId.systemDefault());
+    private static final DateTimeFormatter LOCAL_CLOCK_SECONDS =
+        DateTimeFormatter.ofPattern("hh:mm:ss a").withZone(ZoneId.systemDefault());
+    private static final String[] DAY_NAMES = new String[7]; // Monday first, as DayOfWeek
+
+    static {
+        for (DayOfWeek d : DayOfWeek.values()) {
+            DAY_NAMES[d.ordinal()] = d.getDisplayName(TextStyle.SHORT, Locale.getDefault());
+        }
+    }
+
+    private WeatherFormat() {
+    }
+
+    static String capitalize(String s) {
+        if (s == null || s.isEmpty()) return s;
+        String[] words = s.split(" ");
+        StringBuilder result = new StringBuilder();
+        for (String word : words) {
+            if (isCountryCode(word)) {
+                result.append(word).append(" "); // "London, GB" keeps its country code
+            } else if (!word.isEmpty()) {
+                result.append(Character.toUpperCase(word.charAt(0)))
+                      .append(word.substring(1).toLowerCase())
+                      .append(" ");
+            }
+        }
+        return result.toString().trim();
+    }
+
+    private static boolean isCountryCode(String word) {
+        return word.length() == 2 && Character.isUpperCase(word.charAt(0)) && Character.isUpperCase(word.charAt(1));
+    }
+
+    static String getEmojiForWeatherCode(int code) {
+        if (code >= 200 && code < 300) return "⛈️";  // Thunderstorm
+        if (code >= 300 && code < 400) return "🌦️";  // Drizzle
+        if (code >= 500 && code < 600) return "🌧️";  // Rain
+        if (code >= 600 && code < 700) return "❄️";  // Snow
+        if (code >= 700 && code < 800) return "🌫️";  // Atmosphere (fog, mist, etc.)
+        if (code == 800) return "☀️";                // Clear
+        if (code == 801) return "🌤️";               // Few clouds
+        if (code == 802) return "⛅";                // Scattered clouds
+        if (code >= 803) return "☁️";                // Overcast
+        return "🌡️";
+    }
+
+    /** Whole degrees without the unit, for compact ranges such as "24° / 15°". */
+    static String degrees(double celsius, boolean inCelsius) {
+        return String.format("%.0f°", inCelsius ? celsius : celsius * 9.0 / 5.0 + 32.0);
+    }
+
+    /** Whole degrees with unit, e.g. "21°C"; input is always Celsius as delivered by the API. */
+    static String temperature(double celsius, boolean inCelsius) {
+        return inCelsius ? String.format("%.0f°C", celsius) : String.format("%.0f°F", celsius * 9.0 / 5.0 + 32.0);
+    }
+
+    /** Wall-clock time at a place utcOffsetSeconds from UTC (the API's "timezone" field). */
+    static String convertUnixToTime(long unixSeconds, int utcOffsetSeconds) {
+        if (unixSeconds == 0) return "--";
+        return CLOCK.format(LocalTime.ofSecondOfDay(Math.floorMod(unixSeconds + utcOffsetSeconds, SECONDS_PER_DAY)));
+    }
+
+    /** Short day name ("Mon") of an epoch day; 1970-01-01 was a Thursday. */
+    static String dayOfWeek(long epochDay) {
+        return DAY_NAMES[(int) Math.floorMod(epochDay + 3, 7L)];
+    }
+
+    /** The user's own clock, for "saved at" and "last updated" stamps. */
+    static String localTime(long epochMillis) {
+        return LOCAL_CLOCK.format(Instant.ofEpochMilli(epochMillis));
+    }
+
+    static String localTimeWithSeconds(long epochMillis) {
+        return LOCAL_CLOCK_SECONDS.format(Instant.ofEpochMilli(epochMillis));
+    }
+}
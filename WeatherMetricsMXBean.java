@@ -0,0 +1,16 @@
+import java.util.Map;
+
+/**
+ * JMX view of an engine's {@link Metrics}, registered as weather:type=Metrics,name=...
+ * and readable from jconsole or any JMX client.
+ */
+public interface WeatherMetricsMXBean {
+    /** Every counter and gauge by name, e.g. "http.status.200" or "cache.weather.hits". */
+    Map<String, Long> getCounters();
+
+    /** p50, p90, p99 and max per timed stage in milliseconds, keyed "stage.p99" and so on. */
+    Map<String, Double> getLatencyMillis();
+
+    /** The same numbers as a plain text table. */
+    String getReport();
+}
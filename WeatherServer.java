@@ -0,0 +1,393 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+import org.json.*;
+
+/**
+ * Local HTTP/JSON front for one shared {@link WeatherEngine}, so many internal
+ * dashboards can read weather without each spending its own API quota.
+ * <pre>
+ *   GET /weather?city=London    current conditions
+ *   GET /forecast?city=London   5-day forecast
+ *   GET /near?lat=51.5&lon=-0.12&radiusKm=50         observations around a point
+ *   GET /area?bbox=south,west,north,east              observations across a box
+ *   GET /subscribe?city=London  Server-Sent Events: a "weather" event with every field,
+ *                               then one with just the changed fields after each refresh
+ *   GET /metrics                engine and server metrics, Prometheus text format
+ * </pre>
+ * Responses are serialized once per city and kept as bytes with a content hash ETag;
+ * concurrent misses for one city share a single engine call, and a client that sends
+ * a matching If-None-Match gets a bodyless 304. A 404 is remembered for
+ * -Dweather.server.notFoundTtlMs (30 s). Subscribers to one city share a
+ * single refresh loop through {@link WeatherFeeds}, however many streams are open.
+ * Start with: java -cp .:json-20231013.jar WeatherServer [port]  (default 8080, or -Dweather.port)
+ */
+class WeatherServer implements AutoCloseable {
+    // How long serialized bytes are reused; upstream freshness is governed by the engine's own cache
+    private static final long PAYLOAD_TTL_MS = Long.getLong("weather.server.ttlMs", 30_000);
+    // Unknown cities are remembered briefly too, so a client retrying a typo costs no upstream calls
+    private static final long NOT_FOUND_TTL_MS = Long.getLong("weather.server.notFoundTtlMs", 30_000);
+    private static final int CACHE_SIZE = 1024;
+    // A comment line sent on idle event streams, so proxies keep them open and dead clients are noticed
+    private static final long KEEPALIVE_MS = Long.getLong("weather.server.keepaliveMs", 25_000);
+
+    /** Serialized response body plus its validator. */
+    static final class Payload {
+        final byte[] body;
+        final String etag;
+
+        Payload(byte[] body) {
+            this.body = body;
+            this.etag = etagFor(body);
+        }
+    }
+
+    /** Cached in place of a payload for a city the upstream does not know. */
+    private static final Payload NOT_FOUND = new Payload(new byte[0]);
+
+    private final WeatherEngine engine;
+    private final HttpServer server;
+    private final ExecutorService handlers = ThreadPools.newPerTaskExecutor("weather-http");
+    private final ResponseCache<Payload> weatherPayloads = new ResponseCache<>(CACHE_SIZE);
+    private final ResponseCache<Payload> forecastPayloads = new ResponseCache<>(CACHE_SIZE);
+    private final WeatherFeeds feeds;
+
+    WeatherServer(WeatherEngine engine, int port) throws IOException {
+        this.engine = engine;
+        this.feeds = new WeatherFeeds(engine);
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.setExecutor(handlers);
+        server.createContext("/weather", exchange -> handle(exchange, weatherPayloads, this::loadWeather));
+        server.createContext("/forecast", exchange -> handle(exchange, forecastPayloads, this::loadForecast));
+        server.createContext("/near", exchange -> handleGeo(exchange, () -> engine.fetchNearAsync(
+            number(exchange, "lat"), number(exchange, "lon"), number(exchange, "radiusKm"))));
+        server.createContext("/area", exchange -> handleGeo(exchange, () -> {
+            String[] box = Objects.requireNonNull(queryParam(exchange, "bbox"), "Missing ?bbox=").split(",");
+            if (box.length != 4) throw new IllegalArgumentException("bbox needs south,west,north,east");
+            return engine.fetchAreaAsync(Double.parseDouble(box[0]), Double.parseDouble(box[1]),
+                                         Double.parseDouble(box[2]), Double.parseDouble(box[3]));
+        }));
+        server.createContext("/subscribe", this::handleSubscribe);
+        server.createContext("/metrics", this::handleMetrics);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : Integer.getInteger("weather.port", 8080);
+        WeatherServer server = new WeatherServer(new WeatherStation(), port);
+        server.start();
+        System.out.println("Weather server listening on http://localhost:" + server.port()
+                           + (ThreadPools.hasVirtualThreads() ? " (virtual threads)" : ""));
+    }
+
+    void start() {
+        server.start();
+    }
+
+    int port() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        feeds.close();
+        server.stop(0);
+        handlers.shutdownNow();
+        engine.close();
+    }
+
+    private interface Loader {
+        CompletableFuture<Payload> load(String city);
+    }
+
+    private void handle(HttpExchange exchange, ResponseCache<Payload> cache, Loader loader) throws IOException {
+        long start = System.nanoTime();
+        try {
+            if (!"GET".equals(exchange.getRequestMethod()) && !"HEAD".equals(exchange.getRequestMethod())) {
+                sendError(exchange, 405, "Only GET is supported");
+                return;
+            }
+            String city = queryParam(exchange, "city");
+            if (city == null || city.isBlank()) {
+                sendError(exchange, 400, "Missing ?city=");
+                return;
+            }
+
+            Payload payload;
+            try {
+                payload = cache.getAsync(ResponseCache.normalize(city),
+                                         p -> p == NOT_FOUND ? NOT_FOUND_TTL_MS : PAYLOAD_TTL_MS,
+                                         () -> loader.load(city)).join();
+            } catch (CompletionException | CancellationException e) {
+                sendError(exchange, 502, "Upstream unavailable");
+                return;
+            }
+            if (payload == NOT_FOUND) {
+                exchange.getResponseHeaders().set("Cache-Control", "max-age=" + NOT_FOUND_TTL_MS / 1000);
+                sendError(exchange, 404, "City not found: " + city);
+                return;
+            }
+
+            exchange.getResponseHeaders().set("ETag", payload.etag);
+            exchange.getResponseHeaders().set("Cache-Control", "max-age=" + PAYLOAD_TTL_MS / 1000);
+            String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+            if (payload.etag.equals(ifNoneMatch)) {
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            boolean head = "HEAD".equals(exchange.getRequestMethod());
+            exchange.sendResponseHeaders(200, head ? -1 : payload.body.length);
+            if (!head) {
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(payload.body);
+                }
+            }
+        } finally {
+            exchange.close();
+            // server.weather, server.forecast: time to answer, including any engine call behind it
+            engine.metrics().timer("server." + exchange.getHttpContext().getPath().substring(1)).recordSince(start);
+        }
+    }
+
+    private interface GeoQuery {
+        CompletableFuture<List<WeatherData>> start();
+    }
+
+    /** Area queries are not cached here; the engine's spatial index already answers repeats. */
+    private void handleGeo(HttpExchange exchange, GeoQuery query) throws IOException {
+        long start = System.nanoTime();
+        try {
+            List<WeatherData> found;
+            try {
+                found = query.start().join();
+            } catch (IllegalArgumentException | NullPointerException e) {
+                sendError(exchange, 400, e.getMessage());
+                return;
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof IllegalArgumentException) {
+                    sendError(exchange, 400, e.getCause().getMessage());
+                } else {
+                    sendError(exchange, 502, "Upstream unavailable");
+                }
+                return;
+            }
+            JSONArray observations = new JSONArray();
+            for (WeatherData data : found) {
+                observations.put(weatherJson(data.name, data));
+            }
+            byte[] body = new JSONObject().put("count", found.size()).put("observations", observations)
+                                          .toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+            engine.metrics().timer("server." + exchange.getHttpContext().getPath().substring(1)).recordSince(start);
+        }
+    }
+
+    private static double number(HttpExchange exchange, String name) {
+        String value = queryParam(exchange, name);
+        if (value == null) throw new IllegalArgumentException("Missing ?" + name + "=");
+        return Double.parseDouble(value); // NumberFormatException is an IllegalArgumentException
+    }
+
+    /** Streams a city's feed until the client goes away; the handler thread waits it out. */
+    private void handleSubscribe(HttpExchange exchange) throws IOException {
+        try {
+            String city = queryParam(exchange, "city");
+            if (city == null || city.isBlank()) {
+                sendError(exchange, 400, "Missing ?city=");
+                return;
+            }
+            if (!feeds.canWatch(city)) {
+                sendError(exchange, 503, "Too many cities watched, try again later");
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+            exchange.getResponseHeaders().set("Cache-Control", "no-store");
+            exchange.sendResponseHeaders(200, 0);
+            EventStream stream = new EventStream(exchange.getResponseBody());
+            feeds.feed(city).subscribe(stream);
+            try {
+                while (!stream.ended.await(KEEPALIVE_MS, TimeUnit.MILLISECONDS)) {
+                    stream.send(": keepalive\n\n");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                stream.cancel();
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * One open /subscribe response. It asks for the next update only once the previous
+     * one has been written, so a slow client leaves updates queued in its feed
+     * subscription rather than in memory here.
+     */
+    private static final class EventStream implements Flow.Subscriber<WeatherUpdate> {
+        final CountDownLatch ended = new CountDownLatch(1);
+        private final OutputStream out;
+        private volatile Flow.Subscription subscription;
+
+        EventStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(WeatherUpdate update) {
+            JSONObject changed = new JSONObject(update.changed).put("city", update.city);
+            if (send("event: weather\ndata: " + changed + "\n\n")) {
+                subscription.request(1);
+            }
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            send("event: error\ndata: " + new JSONObject().put("error", String.valueOf(error.getMessage())) + "\n\n");
+            ended.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            ended.countDown();
+        }
+
+        /** Writes and flushes one event; false, and the stream is over, if the client has gone. */
+        synchronized boolean send(String event) {
+            try {
+                out.write(event.getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                return true;
+            } catch (IOException e) {
+                cancel();
+                return false;
+            }
+        }
+
+        void cancel() {
+            Flow.Subscription s = subscription;
+            if (s != null) {
+                s.cancel();
+            }
+            ended.countDown();
+        }
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        try {
+            byte[] body = engine.metrics().toPrometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.getResponseHeaders().set("Cache-Control", "no-store");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /** Serves the last saved observation, marked "stale": true, if the upstream fails. */
+    private CompletableFuture<Payload> loadWeather(String city) {
+        return engine.fetchWeatherAsync(city)
+            .thenApply(data -> data == null ? NOT_FOUND : new Payload(weatherJson(city, data).toString().getBytes(StandardCharsets.UTF_8)))
+            .exceptionally(error -> {
+                WeatherData saved = engine.cachedWeather(city);
+                if (saved == null) {
+                    throw error instanceof CompletionException ? (CompletionException) error : new CompletionException(error);
+                }
+                return new Payload(weatherJson(city, saved).put("stale", true).toString().getBytes(StandardCharsets.UTF_8));
+            });
+    }
+
+    private CompletableFuture<Payload> loadForecast(String city) {
+        return engine.fetchForecastAsync(city).thenApply(forecast ->
+            forecast.isEmpty() ? NOT_FOUND : new Payload(forecastJson(city, forecast).toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    static JSONObject weatherJson(String city, WeatherData data) {
+        JSONObject json = new JSONObject()
+            .put("city", city)
+            .put("cityId", data.cityId)
+            .put("observedAt", data.observedAt)
+            .put("utcOffset", data.utcOffset)
+            .put("temperature", data.temperature)
+            .put("feelsLike", data.feelsLike)
+            .put("humidity", data.humidity)
+            .put("windSpeed", data.windSpeed)
+            .put("pressure", data.pressure)
+            .put("visibility", data.visibility)
+            .put("weatherId", data.weatherId)
+            .put("description", data.description)
+            .put("sunrise", data.sunrise)
+            .put("sunset", data.sunset);
+        if (!Double.isNaN(data.lat) && !Double.isNaN(data.lon)) {
+            json.put("lat", data.lat).put("lon", data.lon);
+        }
+        return json;
+    }
+
+    static JSONObject forecastJson(String city, List<ForecastData> forecast) {
+        JSONArray days = new JSONArray();
+        for (ForecastData f : forecast) {
+            days.put(new JSONObject().put("day", f.day).put("temp", f.temp).put("weatherId", f.weatherId)
+                                     .put("low", f.low).put("high", f.high));
+        }
+        return new JSONObject().put("city", city).put("days", days);
+    }
+
+    private static String queryParam(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) return null;
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            if (key.equals(name)) {
+                return eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] body = new JSONObject().put("error", message).toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static String etagFor(byte[] body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+            StringBuilder tag = new StringBuilder("\"");
+            for (int i = 0; i < 8; i++) {
+                tag.append(String.format("%02x", digest[i]));
+            }
+            return tag.append('"').toString();
+        } catch (NoSuchAlgorithmException e) {
+            return "\"" + Integer.toHexString(Arrays.hashCode(body)) + "\"";
+        }
+    }
+}
@@ -0,0 +1,26 @@
+import java.util.List;
+
+/** Current weather and forecast for one city, fetched together and applied together. */
+class WeatherSnapshot {
+    final WeatherData weather;
+    final List<ForecastData> forecast;
+    // Set when the upstream failed and saved data is served instead: why, and when that data was fetched
+    final Throwable staleCause;
+    final long savedAt;
+
+    public WeatherSnapshot(WeatherData weather, List<ForecastData> forecast) {
+        this(weather, forecast, null, 0);
+    }
+
+    WeatherSnapshot(WeatherData weather, List<ForecastData> forecast, Throwable staleCause, long savedAt) {
+        this.weather = weather;
+        this.forecast = forecast;
+        this.staleCause = staleCause;
+        this.savedAt = savedAt;
+    }
+
+    /** True if this is the last good data, served because fresh data could not be fetched. */
+    boolean isStale() {
+        return staleCause != null;
+    }
+}
@@ -0,0 +1,865 @@
+import java.io.*;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+import org.json.*;
+
+/**
+ * OpenWeatherMap implementation of {@link WeatherEngine}.
+ * Uses the current weather, 5-day forecast and group endpoints; all calls share one
+ * HTTP client, one host rate limiter, the in-memory response caches and the disk cache.
+ * Every fetched observation is also appended to the history store.
+ */
+class WeatherStation implements WeatherEngine {
+    // !!! IMPORTANT: The API key has been replaced with the key you provided. 
+    // If the error persists, please wait 1-2 hours for key activation or check your network.
+    // Servers can supply their own key with -Dweather.apiKey or the OPENWEATHER_API_KEY environment variable.
+    private final String API_KEY = System.getProperty("weather.apiKey",
+        System.getenv().getOrDefault("OPENWEATHER_API_KEY", "cc9bf6c8822ed2764ad84ec36d5823e4"));
+
+    // Where the /weather, /forecast and /group endpoints live; point it at a MockUpstream to run offline
+    static final String DEFAULT_BASE_URL = "https://api.openweathermap.org/data/2.5";
+    private final String baseUrl;
+
+    // OpenWeatherMap refreshes current conditions about every 10 minutes and forecasts less often
+    private static final long WEATHER_TTL_MS = 10 * 60 * 1000L;
+    private static final long FORECAST_TTL_MS = 30 * 60 * 1000L;
+    private static final int CACHE_SIZE = 64;
+    // The group endpoint accepts at most 20 city IDs per call
+    private static final int GROUP_BATCH_SIZE = 20;
+
+    // A stalled upstream must not pin a thread forever (-Dweather.connectTimeoutMs / -Dweather.requestTimeoutMs)
+    private static final Duration CONNECT_TIMEOUT = Duration.ofMillis(Long.getLong("weather.connectTimeoutMs", 5000));
+    private static final Duration REQUEST_TIMEOUT = Duration.ofMillis(Long.getLong("weather.requestTimeoutMs", 10000));
+
+    // Failed upstream calls are retried with backoff (-Dweather.maxAttempts); retries may add about
+    // 20% to the traffic (-Dweather.retryRatio); a failing endpoint is left alone for a while (-Dweather.breakerOpenMs)
+    private static final int MAX_ATTEMPTS = Integer.getInteger("weather.maxAttempts", 3);
+    private static final long RETRY_BASE_DELAY_MS = 250;
+    private static final long RETRY_MAX_DELAY_MS = 4000;
+    private static final long BREAKER_OPEN_MS = Long.getLong("weather.breakerOpenMs", 30_000);
+    private final RetryBudget retryBudget = new RetryBudget(
+        Double.parseDouble(System.getProperty("weather.retryRatio", "0.2")), 1, 10);
+    private final ConcurrentMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    // Point and area queries go by grid cell (-Dweather.geo.cellDegrees); every observation with
+    // coordinates is filed in the grid, and an area may span at most -Dweather.geo.maxCells cells
+    private static final double GEO_CELL_DEGREES = Double.parseDouble(System.getProperty("weather.geo.cellDegrees", "0.25"));
+    private static final int GEO_MAX_CELLS = Integer.getInteger("weather.geo.maxCells", 400);
+    private final GeoGrid geoGrid = new GeoGrid(GEO_CELL_DEGREES, 50_000);
+    private final ResponseCache<WeatherData> cellCache = new ResponseCache<>(CACHE_SIZE * 16);
+
+    private final ResponseCache<WeatherData> weatherCache = new ResponseCache<>(CACHE_SIZE);
+    private final ResponseCache<ForecastSeries> forecastCache = new ResponseCache<>(CACHE_SIZE);
+    private final DiskCache diskCache = DiskCache.openDefault();
+    private final TimeSeriesStore history = TimeSeriesStore.openDefault();
+
+    // Runs response handling, parsing and the disk cache and history writes, one (virtual) thread
+    // per task; requests themselves are non-blocking and their number is capped by the limiter
+    private final ExecutorService fetchExecutor = ThreadPools.newPerTaskExecutor("weather-fetch");
+
+    // One shared client so connections (and their TLS sessions) are reused across refreshes
+    private final HttpClient http = HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_2)
+        .connectTimeout(CONNECT_TIMEOUT)
+        .followRedirects(HttpClient.Redirect.NORMAL)
+        .executor(fetchExecutor)
+        .build();
+
+    // All calls go to one host: cap concurrency and space out request starts (-Dweather.maxConcurrent / -Dweather.minIntervalMs)
+    private final HostRateLimiter limiter = new HostRateLimiter(
+        Integer.getInteger("weather.maxConcurrent", 6), Long.getLong("weather.minIntervalMs", 50), fetchExecutor);
+
+    // Calls left under the API key's plan (-Dweather.quota.*); counted per attempt, retries included
+    private final QuotaLimiter quota = QuotaLimiter.openDefault(fetchExecutor);
+
+    // Normalized city name -> OpenWeatherMap city ID, learned from responses; needed for the group endpoint
+    private final ConcurrentMap<String, Integer> cityIds = new ConcurrentHashMap<>();
+
+    // The bulk city list is large, so it loads in the background; until then every name goes to the API
+    private volatile CityIndex cityIndex = CityIndex.EMPTY;
+
+    // Stage timers and counters, also published over JMX
+    private final Metrics metrics = new Metrics();
+
+    /** Talks to -Dweather.baseUrl, or to OpenWeatherMap itself. */
+    WeatherStation() {
+        this(System.getProperty("weather.baseUrl", DEFAULT_BASE_URL));
+    }
+
+    /** Talks to the endpoints under baseUrl, e.g. "http://localhost:8081/data/2.5". */
+    WeatherStation(String baseUrl) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        CompletableFuture.supplyAsync(CityIndex::openDefault, fetchExecutor).thenAccept(index -> cityIndex = index);
+        registerCacheGauges("weather", weatherCache);
+        registerCacheGauges("forecast", forecastCache);
+        registerCacheGauges("cell", cellCache);
+        metrics.gauge("geo.indexed", geoGrid::size);
+        metrics.gauge("quota.minute.remaining", quota::remainingThisMinute);
+        metrics.gauge("quota.day.used", quota::usedToday);
+        metrics.gauge("quota.day.remaining", quota::remainingToday);
+        metrics.gauge("quota.waited", quota::waited);
+        metrics.gauge("quota.shed", quota::shed);
+        metrics.registerMBean("WeatherStation");
+    }
+
+    private void registerCacheGauges(String name, ResponseCache<?> cache) {
+        metrics.gauge("cache." + name + ".hits", cache::getHits);
+        metrics.gauge("cache." + name + ".misses", cache::getMisses);
+        metrics.gauge("cache." + name + ".coalesced", cache::getCoalesced);
+        metrics.gauge("cache." + name + ".evictions", cache::getEvictions);
+    }
+
+    @Override
+    public boolean isApiKeyMissing() {
+        return API_KEY.equals("YOUR_API_KEY");
+    }
+
+    /** Human readable hit/miss/eviction counters for both endpoints. */
+    @Override
+    public String cacheStats() {
+        return "<html>Weather cache: " + weatherCache + "<br>Forecast cache: " + forecastCache
+             + "<br>API quota: " + quota + "</html>";
+    }
+
+    /**
+     * Fetches current weather and the 5-day forecast concurrently.
+     * The snapshot completes once both calls finish, so its latency is the slower of the two.
+     */
+    @Override
+    public CompletableFuture<WeatherSnapshot> fetchSnapshotAsync(String city, QuotaLimiter.Priority priority) {
+        LatencyHistogram timer = metrics.timer("engine.snapshot");
+        long start = System.nanoTime();
+        CompletableFuture<WeatherData> weather = fetchWeatherAsync(city, priority);
+        CompletableFuture<List<ForecastData>> forecast = fetchForecastAsync(city, priority);
+        // The two calls are one unit: once the weather call fails or finds no city the forecast
+        // is of no use (a stale snapshot takes the saved one), so it is cancelled rather than
+        // waited for, and cancelling the snapshot cancels both
+        weather.whenComplete((data, error) -> {
+            if (error != null || data == null) {
+                forecast.cancel(true);
+            }
+        });
+        CompletableFuture<WeatherSnapshot> snapshot = weather.thenCompose(data -> data == null
+            ? CompletableFuture.completedFuture(new WeatherSnapshot(null, Collections.emptyList()))
+            : forecast.thenApply(days -> new WeatherSnapshot(data, days)));
+        return Futures.propagateCancel(snapshot
+            .exceptionally(error -> staleSnapshot(city, error))
+            .whenComplete((result, error) -> timer.recordSince(start)), weather, forecast);
+    }
+
+    /** The last good data for city in place of a failed fetch; rethrows error if nothing was saved. */
+    private WeatherSnapshot staleSnapshot(String city, Throwable error) {
+        Throwable cause = unwrap(error);
+        WeatherData saved = cause instanceof CancellationException ? null : cachedWeather(city);
+        if (saved == null) {
+            throw new CompletionException(cause);
+        }
+        metrics.increment("stale.served");
+        return new WeatherSnapshot(saved, cachedForecast(city), cause, cachedWeatherTime(city));
+    }
+
+    /**
+     * Completes with null if the city is unknown or the key is missing, and exceptionally
+     * (with an HttpStatusException where there was an answer) if the call failed.
+     */
+    @Override
+    public CompletableFuture<WeatherData> fetchWeatherAsync(String city) {
+        return fetchWeatherAsync(city, QuotaLimiter.Priority.INTERACTIVE);
+    }
+
+    // A caller that joins a load already in flight shares it at the priority it was started with
+    private CompletableFuture<WeatherData> fetchWeatherAsync(String city, QuotaLimiter.Priority priority) {
+        if (isApiKeyMissing()) {
+            return CompletableFuture.completedFuture(null); // the UI shows the missing key error
+        }
+        return weatherCache.getAsync(ResponseCache.normalize(city), this::weatherTtl, () -> loadWeatherAsync(city, priority));
+    }
+
+    /** Keep an observation until the upstream is expected to publish the next one, within [1 min, WEATHER_TTL_MS]. */
+    private long weatherTtl(WeatherData data) {
+        long untilNext = RefreshScheduler.millisUntilNextObservation(data.observedAt, System.currentTimeMillis());
+        return Math.max(RefreshScheduler.MIN_DELAY_MS, Math.min(WEATHER_TTL_MS, untilNext));
+    }
+
+    /** Falls back to the saved forecast, or an empty list, if the forecast could not be fetched. */
+    @Override
+    public CompletableFuture<List<ForecastData>> fetchForecastAsync(String city) {
+        return fetchForecastAsync(city, QuotaLimiter.Priority.INTERACTIVE);
+    }
+
+    private CompletableFuture<List<ForecastData>> fetchForecastAsync(String city, QuotaLimiter.Priority priority) {
+        CompletableFuture<ForecastSeries> series = fetchForecastSeriesAsync(city, priority);
+        return Futures.propagateCancel(
+            series.thenApply(s -> s != null ? s.daily() : cachedForecast(city)), series);
+    }
+
+    /** Completes with null if the forecast could not be fetched. */
+    @Override
+    public CompletableFuture<ForecastSeries> fetchForecastSeriesAsync(String city) {
+        return fetchForecastSeriesAsync(city, QuotaLimiter.Priority.INTERACTIVE);
+    }
+
+    private CompletableFuture<ForecastSeries> fetchForecastSeriesAsync(String city, QuotaLimiter.Priority priority) {
+        if (isApiKeyMissing()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return forecastCache.getAsync(ResponseCache.normalize(city), FORECAST_TTL_MS, () -> loadForecastAsync(city, priority));
+    }
+
+    /** Served per grid cell: a fresh observation anywhere in the cell, else one call for the cell's centre. */
+    @Override
+    public CompletableFuture<WeatherData> fetchWeatherAtAsync(double lat, double lon) {
+        if (isApiKeyMissing()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return fetchCellAsync(geoGrid.cellOf(lat, lon));
+    }
+
+    @Override
+    public CompletableFuture<List<WeatherData>> fetchAreaAsync(double south, double west, double north, double east) {
+        try {
+            return fetchCellsAsync(geoGrid.cellsIn(south, west, north, east, GEO_MAX_CELLS));
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<List<WeatherData>> fetchNearAsync(double lat, double lon, double radiusKm) {
+        try {
+            return fetchCellsAsync(geoGrid.cellsNear(lat, lon, radiusKm, GEO_MAX_CELLS));
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /** One observation per cell, cells that failed or have nothing left out; places seen from two cells appear once. */
+    private CompletableFuture<List<WeatherData>> fetchCellsAsync(List<Long> cells) {
+        if (cells.isEmpty()) {
+            return CompletableFuture.failedFuture(
+                new IllegalArgumentException("Area spans more than " + GEO_MAX_CELLS + " grid cells"));
+        }
+        if (isApiKeyMissing()) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+        List<CompletableFuture<WeatherData>> calls = new ArrayList<>(cells.size());
+        for (long cell : cells) {
+            CompletableFuture<WeatherData> call = fetchCellAsync(cell);
+            calls.add(Futures.propagateCancel(call.exceptionally(e -> null), call));
+        }
+        CompletableFuture<List<WeatherData>> all = CompletableFuture.allOf(calls.toArray(new CompletableFuture<?>[0]))
+            .thenApply(v -> {
+                Map<Object, WeatherData> distinct = new LinkedHashMap<>();
+                for (CompletableFuture<WeatherData> call : calls) {
+                    WeatherData data = call.join();
+                    if (data != null) {
+                        distinct.putIfAbsent(data.cityId != 0 ? (Object) data.cityId : data, data);
+                    }
+                }
+                return new ArrayList<>(distinct.values());
+            });
+        return Futures.propagateCancel(all, calls.toArray(new CompletableFuture<?>[0]));
+    }
+
+    private CompletableFuture<WeatherData> fetchCellAsync(long cell) {
+        metrics.increment("geo.cells");
+        WeatherData seen = geoGrid.get(cell);
+        if (seen != null) {
+            metrics.increment("geo.indexHits");
+            return CompletableFuture.completedFuture(seen);
+        }
+        return cellCache.getAsync("cell:" + cell, this::weatherTtl,
+                                  () -> loadWeatherAtAsync(geoGrid.centerLat(cell), geoGrid.centerLon(cell)));
+    }
+
+    @Override
+    public CityIndex cityIndex() {
+        return cityIndex;
+    }
+
+    /**
+     * The query parameter that selects city: "id=..." when the city list or an earlier
+     * response identifies it, else "q=...". Null if the loaded city list has no city of
+     * that name at all; a name it knows with a state or country it cannot place
+     * ("Portland,OR,US", a code it lacks) is left to the API.
+     */
+    private String locationQuery(String city) {
+        CityIndex index = cityIndex;
+        if (!index.isEmpty()) {
+            List<CityIndex.City> matches = index.matches(city);
+            if (matches.size() == 1) return "id=" + matches.get(0).id;
+            if (matches.isEmpty() && !index.containsName(city)) return null;
+        }
+        // Ambiguous names ("London") keep the API's own choice, which the learned ID records
+        Integer known = cityIds.get(ResponseCache.normalize(city));
+        if (known != null) return "id=" + known;
+        return "q=" + URLEncoder.encode(city, StandardCharsets.UTF_8);
+    }
+
+    /** Every observation fetched so far, per city. */
+    @Override
+    public TimeSeriesStore history() {
+        return history;
+    }
+
+    @Override
+    public RefreshScheduler scheduleRefresh(Supplier<String> city, BiConsumer<String, WeatherSnapshot> onUpdate,
+                                            RefreshScheduler.Listener listener) {
+        return new RefreshScheduler(() -> {
+            String name = city.get();
+            return fetchSnapshotAsync(name, QuotaLimiter.Priority.BACKGROUND).whenComplete((snapshot, error) -> {
+                if (error == null && snapshot.weather != null && !snapshot.isStale()) {
+                    onUpdate.accept(name, snapshot);
+                }
+            });
+        }, listener);
+    }
+
+    @Override
+    public void close() {
+        quota.save();
+        fetchExecutor.shutdownNow();
+        history.close();
+        metrics.unregisterMBean();
+    }
+
+    @Override
+    public Metrics metrics() {
+        return metrics;
+    }
+
+    @Override
+    public QuotaLimiter quota() {
+        return quota;
+    }
+
+    /** Blocking variant; returns null on any failure. */
+    public WeatherData fetchWeatherFromAPI(String city) {
+        try {
+            return fetchWeatherAsync(city).join();
+        } catch (CompletionException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Refreshes current weather for many cities at once.
+     * Fresh cache entries are used as is; cities with a known ID are fetched through the
+     * group endpoint, up to 20 per call; the rest go out as individual concurrent calls,
+     * which also teaches us their IDs for the next round. The result maps each requested
+     * name to its data, or to null if it could not be fetched. If the quota refused any of
+     * the calls the result fails with that QuotaExceededException instead, since those
+     * cities were never looked up.
+     */
+    @Override
+    public CompletableFuture<Map<String, WeatherData>> fetchManyAsync(Collection<String> cities,
+                                                                     QuotaLimiter.Priority priority) {
+        Map<String, WeatherData> results = new ConcurrentHashMap<>();
+        AtomicReference<Throwable> refused = new AtomicReference<>();
+        Map<Integer, String> byId = new LinkedHashMap<>();
+        List<CompletableFuture<?>> calls = new ArrayList<>();
+
+        for (String city : cities) {
+            String key = ResponseCache.normalize(city);
+            boolean needsCall = weatherCache.lookup(key) == null && !isApiKeyMissing();
+            Integer id = needsCall ? cityIdFor(key) : null;
+            if (id != null) {
+                byId.put(id, city);
+            } else {
+                calls.add(fetchWeatherAsync(city, priority).handle((data, error) -> {
+                    if (error != null && unwrap(error) instanceof QuotaExceededException) {
+                        refused.compareAndSet(null, unwrap(error));
+                    }
+                    putResult(results, city, data);
+                    return null;
+                }));
+            }
+        }
+
+        List<Integer> ids = new ArrayList<>(byId.keySet());
+        for (int from = 0; from < ids.size(); from += GROUP_BATCH_SIZE) {
+            List<Integer> batch = ids.subList(from, Math.min(ids.size(), from + GROUP_BATCH_SIZE));
+            calls.add(loadGroupAsync(batch, byId, priority).handle((found, error) -> {
+                if (error != null) {
+                    refused.compareAndSet(null, unwrap(error)); // only a quota refusal gets past loadGroupAsync
+                } else {
+                    results.putAll(found);
+                }
+                return null;
+            }));
+        }
+
+        return CompletableFuture.allOf(calls.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+            if (refused.get() != null) {
+                throw new CompletionException(refused.get());
+            }
+            Map<String, WeatherData> ordered = new LinkedHashMap<>();
+            for (String city : cities) {
+                ordered.put(city, results.get(city));
+            }
+            return ordered;
+        });
+    }
+
+    private static void putResult(Map<String, WeatherData> results, String city, WeatherData data) {
+        if (data != null) {
+            results.put(city, data);
+        }
+    }
+
+    private Integer cityIdFor(String key) {
+        Integer id = cityIds.get(key);
+        if (id == null) {
+            List<CityIndex.City> matches = cityIndex.matches(key);
+            if (matches.size() == 1) id = matches.get(0).id;
+        }
+        if (id == null) {
+            // A city we fetched in an earlier session still has its payload (and ID) on disk
+            DiskCache.Record record = diskCache.get("weather:" + key);
+            if (record != null) {
+                try {
+                    int saved = new JSONObject(new String(record.payload, StandardCharsets.UTF_8)).optInt("id", 0);
+                    if (saved != 0) {
+                        cityIds.put(key, saved);
+                        id = saved;
+                    }
+                } catch (JSONException ignored) {
+                    // unreadable payload, fall back to a by-name call
+                }
+            }
+        }
+        return id;
+    }
+
+    /** One call to /group for up to 20 IDs; each city's result also lands in both caches. */
+    private CompletableFuture<Map<String, WeatherData>> loadGroupAsync(List<Integer> ids, Map<Integer, String> byId,
+                                                                      QuotaLimiter.Priority priority) {
+        StringBuilder idList = new StringBuilder();
+        for (Integer id : ids) {
+            if (idList.length() > 0) idList.append(',');
+            idList.append(id);
+        }
+        String api = baseUrl + "/group?id=" + idList +
+                    "&appid=" + API_KEY + "&units=metric";
+
+        return fetchBodyAsync("group", api, priority)
+            .thenApply(body -> {
+                long parseStart = System.nanoTime();
+                Map<String, WeatherData> results = new HashMap<>();
+                JSONArray list = new JSONObject(new String(body, StandardCharsets.UTF_8)).optJSONArray("list");
+                for (int i = 0; list != null && i < list.length(); i++) {
+                    JSONObject item = list.getJSONObject(i);
+                    String city = byId.get(item.optInt("id", 0));
+                    WeatherData data = city != null ? parseWeather(item) : null;
+                    if (data != null) {
+                        String key = ResponseCache.normalize(city);
+                        weatherCache.put(key, data, weatherTtl(data));
+                        diskCache.put("weather:" + key, item.toString().getBytes(StandardCharsets.UTF_8));
+                        history.append(key, data);
+                        geoGrid.put(data, weatherTtl(data));
+                        results.put(city, data);
+                    }
+                }
+                metrics.timer("parse.group").recordSince(parseStart);
+                return results;
+            })
+            .exceptionally(e -> {
+                Throwable cause = unwrap(e);
+                if (cause instanceof QuotaExceededException) {
+                    throw new CompletionException(cause);
+                }
+                System.err.println("Group Fetch Error: " + cause);
+                return Collections.emptyMap();
+            });
+    }
+
+    public List<ForecastData> fetch5DayForecast(String city) {
+        return fetchForecastAsync(city).join();
+    }
+
+    /**
+     * Returns the last weather payload saved on disk for city, or null if there is none.
+     * A payload that is still within its TTL also seeds the in-memory cache, so the
+     * background revalidation that follows does not need a network call.
+     */
+    @Override
+    public WeatherData cachedWeather(String city) {
+        String key = ResponseCache.normalize(city);
+        DiskCache.Record record = diskCache.get("weather:" + key);
+        if (record == null) return null;
+        try {
+            WeatherData data = parseWeather(new JSONObject(new String(record.payload, StandardCharsets.UTF_8)));
+            long remaining = record.savedAt + WEATHER_TTL_MS - System.currentTimeMillis();
+            if (data != null && remaining > 0) {
+                weatherCache.put(key, data, Math.min(remaining, weatherTtl(data)));
+            }
+            return data;
+        } catch (JSONException e) {
+            System.err.println("Cached weather unreadable: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /** Forecast counterpart of {@link #cachedWeather(String)}; returns an empty list if nothing is saved. */
+    @Override
+    public List<ForecastData> cachedForecast(String city) {
+        String key = ResponseCache.normalize(city);
+        DiskCache.Record record = diskCache.get("forecast:" + key);
+        if (record == null) return Collections.emptyList();
+        try {
+            ForecastSeries series = ForecastParser.parseSeries(new ByteArrayInputStream(record.payload));
+            if (series == null) return Collections.emptyList();
+            long remaining = record.savedAt + FORECAST_TTL_MS - System.currentTimeMillis();
+            if (remaining > 0) {
+                forecastCache.put(key, series, remaining);
+            }
+            return series.daily();
+        } catch (IOException e) {
+            System.err.println("Cached forecast unreadable: " + e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    /** Time the saved weather payload for city was fetched, or 0 if nothing is saved. */
+    @Override
+    public long cachedWeatherTime(String city) {
+        DiskCache.Record record = diskCache.get("weather:" + ResponseCache.normalize(city));
+        return record == null ? 0 : record.savedAt;
+    }
+
+    private CompletableFuture<WeatherData> loadWeatherAsync(String city, QuotaLimiter.Priority priority) {
+        String location = locationQuery(city);
+        if (location == null) {
+            return CompletableFuture.completedFuture(null); // not in the city list: same as a 404, without the call
+        }
+        String api = baseUrl + "/weather?" + location + 
+                    "&appid=" + API_KEY + "&units=metric";
+
+        CompletableFuture<byte[]> call = fetchBodyAsync("weather", api, priority);
+        return Futures.propagateCancel(call
+            .thenApply(body -> {
+                long parseStart = System.nanoTime();
+                WeatherData data = parseWeather(new JSONObject(new String(body, StandardCharsets.UTF_8)));
+                metrics.timer("parse.weather").recordSince(parseStart);
+                if (data != null) {
+                    String key = ResponseCache.normalize(city);
+                    diskCache.put("weather:" + key, body);
+                    history.append(key, data);
+                    geoGrid.put(data, weatherTtl(data));
+                    if (data.cityId != 0) {
+                        cityIds.put(key, data.cityId);
+                    }
+                }
+                return data;
+            })
+            .exceptionally(e -> {
+                Throwable cause = unwrap(e);
+                if (cause instanceof HttpStatusException && ((HttpStatusException) cause).statusCode == 404) {
+                    return null; // city not found
+                }
+                System.err.println("API Fetch Error: " + cause);
+                throw new CompletionException(cause);
+            }), call);
+    }
+
+    private CompletableFuture<WeatherData> loadWeatherAtAsync(double lat, double lon) {
+        String api = String.format(Locale.ROOT, "%s/weather?lat=%.4f&lon=%.4f&appid=%s&units=metric", baseUrl, lat, lon, API_KEY);
+        CompletableFuture<byte[]> call = fetchBodyAsync("weather", api, QuotaLimiter.Priority.INTERACTIVE);
+        return Futures.propagateCancel(call
+            .thenApply(body -> {
+                long parseStart = System.nanoTime();
+                WeatherData data = parseWeather(new JSONObject(new String(body, StandardCharsets.UTF_8)));
+                metrics.timer("parse.weather").recordSince(parseStart);
+                if (data != null) {
+                    geoGrid.put(data, weatherTtl(data));
+                }
+                return data;
+            })
+            .exceptionally(e -> {
+                Throwable cause = unwrap(e);
+                if (cause instanceof HttpStatusException && ((HttpStatusException) cause).statusCode == 404) {
+                    return null; // nothing reported near this point
+                }
+                System.err.println("API Fetch Error: " + cause);
+                throw new CompletionException(cause);
+            }), call);
+    }
+
+    /** Extracts WeatherData from a /weather payload (or one entry of a /group list); null for a 404 payload. */
+    static WeatherData parseWeather(JSONObject obj) {
+        // Check for city not found error (OpenWeatherMap usually returns code 404)
+        if (obj.has("cod") && obj.optInt("cod") == 404) {
+             return null;
+        }
+
+        JSONObject main = obj.getJSONObject("main");
+        JSONObject wind = obj.optJSONObject("wind");
+        JSONObject sys = obj.optJSONObject("sys");
+        JSONArray weather = obj.optJSONArray("weather");
+
+        double temp = main.optDouble("temp", 0);
+        double feelsLike = main.optDouble("feels_like", temp);
+        double humidity = main.optDouble("humidity", 0);
+        double pressure = main.optDouble("pressure", 0);
+        double windSpeed = wind != null ? wind.optDouble("speed", 0) : 0;
+        double visibility = obj.optDouble("visibility", 0);
+        
+        int weatherId = 800;
+        String description = "Unknown";
+        if (weather != null && weather.length() > 0) {
+            JSONObject w = weather.getJSONObject(0);
+            weatherId = w.optInt("id", 800);
+            description = w.optString("description", "Unknown");
+        }
+        
+        // Sunrise and sunset are shown in the city's own time, not the JVM's
+        long observedAt = obj.optLong("dt", 0);
+        int utcOffset = obj.has("timezone") ? obj.optInt("timezone", 0)
+            : TimeZone.getDefault().getOffset(observedAt * 1000L) / 1000;
+        String sunrise = "--";
+        String sunset = "--";
+        if (sys != null) {
+            sunrise = WeatherFormat.convertUnixToTime(sys.optLong("sunrise", 0), utcOffset);
+            sunset = WeatherFormat.convertUnixToTime(sys.optLong("sunset", 0), utcOffset);
+        }
+
+        WeatherData data = new WeatherData(temp, feelsLike, humidity, windSpeed, pressure, visibility,
+                                           weatherId, description, sunrise, sunset);
+        data.cityId = obj.optInt("id", 0);
+        data.observedAt = observedAt;
+        data.utcOffset = utcOffset;
+        data.name = obj.optString("name", null);
+        JSONObject coord = obj.optJSONObject("coord");
+        if (coord != null) {
+            data.lat = coord.optDouble("lat", Double.NaN);
+            data.lon = coord.optDouble("lon", Double.NaN);
+        }
+        return data;
+    }
+    
+    /** Returns null on failure so that an empty result is never cached. */
+    private CompletableFuture<ForecastSeries> loadForecastAsync(String city, QuotaLimiter.Priority priority) {
+        String location = locationQuery(city);
+        if (location == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        String api = baseUrl + "/forecast?" + location + 
+                    "&appid=" + API_KEY + "&units=metric";
+
+        CompletableFuture<byte[]> call = fetchBodyAsync("forecast", api, priority);
+        return Futures.propagateCancel(call
+            .thenApply(body -> {
+                ForecastSeries series;
+                long parseStart = System.nanoTime();
+                try {
+                    series = ForecastParser.parseSeries(new ByteArrayInputStream(body));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                metrics.timer("parse.forecast").recordSince(parseStart);
+                if (series != null) {
+                    diskCache.put("forecast:" + ResponseCache.normalize(city), body);
+                }
+                return series;
+            })
+            .exceptionally(e -> {
+                System.err.println("Forecast Fetch Error: " + unwrap(e));
+                return null;
+            }), call);
+    }
+
+    /**
+     * GET with the resilience policy of endpoint around it:
+     * - Calls are refused with a CircuitOpenException while the endpoint's breaker is open
+     * - Every attempt takes a call from the API quota at priority first, waiting for one if
+     *   need be; a QuotaExceededException is passed on at once
+     * - Upstream failures (5xx, 429, I/O errors) are retried up to MAX_ATTEMPTS times in all,
+     *   after a full-jitter exponential backoff or the server's Retry-After, if the shared
+     *   retry budget allows and the request timeout has not yet passed since the first try
+     * - A 404 or other client error is passed on at once
+     * Cancelling the result stops the retries and cancels the attempt in flight.
+     */
+    private CompletableFuture<byte[]> fetchBodyAsync(String endpoint, String urlString, QuotaLimiter.Priority priority) {
+        CircuitBreaker breaker = breakers.computeIfAbsent(endpoint, name -> {
+            CircuitBreaker created = new CircuitBreaker(BREAKER_OPEN_MS);
+            metrics.gauge("breaker." + name + ".state", () -> created.state().ordinal());
+            metrics.gauge("breaker." + name + ".opened", created::timesOpened);
+            return created;
+        });
+        CompletableFuture<byte[]> result = new CompletableFuture<>();
+        retryBudget.onRequest();
+        attempt(endpoint, breaker, urlString, priority, 1, System.nanoTime(), result);
+        return result;
+    }
+
+    private void attempt(String endpoint, CircuitBreaker breaker, String urlString, QuotaLimiter.Priority priority,
+                         int attempt, long firstTry, CompletableFuture<byte[]> result) {
+        if (result.isDone()) return; // cancelled during the backoff
+        if (!breaker.tryAcquire()) {
+            metrics.increment("breaker." + endpoint + ".rejected");
+            result.completeExceptionally(new CircuitOpenException(endpoint, breaker.millisUntilTrial()));
+            return;
+        }
+        CompletableFuture<Void> permit = quota.acquire(priority);
+        Futures.propagateCancel(result, permit);
+        permit.whenComplete((granted, refused) -> {
+            if (refused == null) {
+                send(endpoint, breaker, urlString, priority, attempt, firstTry, result);
+                return;
+            }
+            breaker.onCancelled(); // never sent, so it says nothing about the upstream
+            if (!permit.isCancelled()) {
+                result.completeExceptionally(unwrap(refused));
+            }
+        });
+    }
+
+    private void send(String endpoint, CircuitBreaker breaker, String urlString, QuotaLimiter.Priority priority,
+                      int attempt, long firstTry, CompletableFuture<byte[]> result) {
+        if (result.isDone()) { // cancelled while waiting for quota
+            breaker.onCancelled();
+            return;
+        }
+        CompletableFuture<byte[]> call = sendAsync(urlString);
+        Futures.propagateCancel(result, call);
+        call.whenComplete((body, error) -> {
+            if (error == null) {
+                breaker.onSuccess();
+                result.complete(body);
+                return;
+            }
+            Throwable cause = unwrap(error);
+            if (call.isCancelled()) {
+                breaker.onCancelled();
+                return;
+            }
+            if (cause instanceof HttpStatusException && ((HttpStatusException) cause).statusCode == 429) {
+                quota.onThrottled();
+            }
+            boolean upstreamTrouble = !(cause instanceof HttpStatusException) || isRetryable((HttpStatusException) cause);
+            if (upstreamTrouble) {
+                breaker.onFailure();
+            } else {
+                breaker.onSuccess();
+            }
+            long delay = retryDelay(attempt, cause);
+            boolean inTime = System.nanoTime() - firstTry + TimeUnit.MILLISECONDS.toNanos(delay) < REQUEST_TIMEOUT.toNanos();
+            if (!upstreamTrouble || attempt >= MAX_ATTEMPTS || !inTime) {
+                result.completeExceptionally(cause);
+            } else if (!retryBudget.tryRetry()) {
+                metrics.increment("http.retry.budgetExhausted");
+                result.completeExceptionally(cause);
+            } else {
+                metrics.increment("http.retry");
+                CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS, fetchExecutor)
+                    .execute(() -> attempt(endpoint, breaker, urlString, priority, attempt + 1, firstTry, result));
+            }
+        });
+    }
+
+    private static boolean isRetryable(HttpStatusException e) {
+        return e.statusCode == 429 || e.statusCode >= 500;
+    }
+
+    /** Retry-After if the server sent one, else "full jitter": uniform in [0, base * 2^(attempt-1)], capped. */
+    private static long retryDelay(int attempt, Throwable cause) {
+        if (cause instanceof HttpStatusException && ((HttpStatusException) cause).retryAfterMillis > 0) {
+            return ((HttpStatusException) cause).retryAfterMillis;
+        }
+        long ceiling = Math.min(RETRY_MAX_DELAY_MS, RETRY_BASE_DELAY_MS << Math.min(attempt - 1, 16));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    /**
+     * One attempt: sends a gzip-accepting GET on the shared client and completes with the
+     * decoded body of a 200 response; any other status is logged and completes exceptionally.
+     * Cancelling the result gives up the rate limiter slot or aborts the exchange.
+     * Times the wait for a permit (http.queue), the exchange itself including DNS, TLS and
+     * transfer (http.exchange) and gunzip (http.decode), and counts outcomes by status.
+     */
+    private CompletableFuture<byte[]> sendAsync(String urlString) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(urlString))
+            .timeout(REQUEST_TIMEOUT)
+            .header("Accept", "application/json")
+            .header("Accept-Encoding", "gzip")
+            .GET()
+            .build();
+
+        CompletableFuture<HttpResponse<byte[]>> sent = new CompletableFuture<>();
+        long queuedAt = System.nanoTime();
+        CompletableFuture<Void> permit = limiter.acquire();
+        permit.thenRun(() -> {
+            if (sent.isDone()) {
+                limiter.release(); // cancelled while waiting for the permit
+                return;
+            }
+            long sentAt = System.nanoTime();
+            metrics.timer("http.queue").recordNanos(sentAt - queuedAt);
+            CompletableFuture<HttpResponse<byte[]>> call = http.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray());
+            call.whenComplete((response, error) -> {
+                limiter.release();
+                metrics.timer("http.exchange").recordSince(sentAt);
+                if (error != null) {
+                    metrics.increment(call.isCancelled() ? "http.cancelled" : "http.error." + unwrap(error).getClass().getSimpleName());
+                    sent.completeExceptionally(error);
+                } else {
+                    sent.complete(response);
+                }
+            });
+            Futures.propagateCancel(sent, call);
+        });
+        Futures.propagateCancel(sent, permit);
+
+        return Futures.propagateCancel(sent.thenApply(response -> {
+            long decodeStart = System.nanoTime();
+            byte[] body = decodeBody(response);
+            metrics.timer("http.decode").recordSince(decodeStart);
+            int responseCode = response.statusCode();
+            metrics.increment("http.status." + responseCode);
+            if (responseCode != 200) {
+                // Log the error body for detailed messages
+                if (body.length > 0) {
+                    System.err.println("API Error Response: " + new String(body, StandardCharsets.UTF_8));
+                }
+                throw new CompletionException(new HttpStatusException(responseCode, retryAfterMillis(response)));
+            }
+            return body;
+        }), sent);
+    }
+
+    /** Retry-After in delta-seconds form; the HTTP-date form is not used by this API. */
+    private static long retryAfterMillis(HttpResponse<?> response) {
+        try {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(response.headers().firstValue("Retry-After").orElse("0").trim()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private byte[] decodeBody(HttpResponse<byte[]> response) {
+        String encoding = response.headers().firstValue("Content-Encoding").orElse("");
+        if (!encoding.equalsIgnoreCase("gzip")) {
+            return response.body();
+        }
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(response.body()))) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+}
@@ -2,12 +2,9 @@ import javax.swing.*;
 import javax.swing.border.*;
 import java.awt.*;
 import java.awt.event.*;
-import java.net.*;
-import java.io.*;
-import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.List;
-import org.json.*;
+import java.util.concurrent.*;
 
 /**
  * Enhanced Modern Weather GUI with favorites, unit toggle, and better UI.
@@ -20,7 +17,9 @@ import org.json.*;
  * - 5-day forecast preview
  * - Feels-like temperature
  * - Pressure and visibility data
- * * NOTE: You MUST replace "YOUR_API_KEY" with your OpenWeatherMap API key on line 663.
+ * All fetching, parsing and caching lives in the headless {@link WeatherEngine}
+ * (see WeatherStation.java); this window is just one consumer of it.
+ * * NOTE: You MUST set your OpenWeatherMap API key in WeatherStation.java (or pass -Dweather.apiKey).
  * Requires org.json library (json-20231013.jar) on classpath.
  */
 public class WeatherSystem_API_Java extends JFrame {
@@ -41,23 +40,34 @@ public class WeatherSystem_API_Java extends JFrame {
     private final JLabel updatedLabel = new JLabel("Last updated: --");
     private final JButton autoButton = new JButton("Auto Refresh");
     private final JButton stopAutoButton = new JButton("Stop");
+    private final JButton dashboardButton = new JButton("Dashboard");
+    private final JButton diagnosticsButton = new JButton("Diagnostics");
     private final JButton addFavoriteButton = new JButton("★ Add Favorite");
     private final JComboBox<String> favoritesCombo = new JComboBox<>();
     private final JToggleButton unitToggle = new JToggleButton("°F");
-    private final JPanel forecastPanel = new JPanel(new GridLayout(1, 5, 8, 8));
+    private final ForecastView forecastView = new ForecastView();
     
-    private final javax.swing.Timer autoTimer;
-    private String currentCity = "Noida";
+    private final RefreshScheduler autoRefresh;
+    private volatile String currentCity = "Noida"; // also read by the auto-refresh thread
     private boolean isCelsius = true;
     private final Set<String> favoriteCities = new LinkedHashSet<>();
     private WeatherData currentWeatherData;
-
-    private final WeatherStation station = new WeatherStation();
+    private DashboardDialog dashboard;
+    private DiagnosticsDialog diagnostics;
+
+    private final WeatherEngine station = new WeatherStation();
+    private final CityAutocomplete autocomplete = new CityAutocomplete(searchField,
+        prefix -> station.cityIndex().complete(prefix, 8), this::performSearch);
+    // Searches are debounced and only the latest one is applied
+    private static final int SEARCH_DEBOUNCE_MS = 250;
+    private final RequestManager<WeatherSnapshot> searches = new RequestManager<>(SEARCH_DEBOUNCE_MS,
+        station::fetchSnapshotAsync,
+        (city, snapshot, error) -> applySnapshot(WeatherFormat.capitalize(city), snapshot, error));
 
     public WeatherSystem_API_Java() {
         super("Weather Monitoring System • Live Forecast");
         setSize(900, 700);
-        setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
         setLocationRelativeTo(null);
         setLayout(new BorderLayout(12, 12));
         getContentPane().setBackground(new Color(235, 245, 250));
@@ -84,8 +94,13 @@ public class WeatherSystem_API_Java extends JFrame {
         // Bottom controls
         add(createBottomPanel(), BorderLayout.SOUTH);
 
-        // Timer for auto refresh (30s)
-        autoTimer = new javax.swing.Timer(30000, e -> performSearch(currentCity));
+        // Auto refresh follows the upstream update cadence instead of a fixed period
+        // Failures of a scheduled refresh only touch the status line
+        autoRefresh = station.scheduleRefresh(() -> currentCity,
+            (city, snapshot) -> SwingUtilities.invokeLater(() -> {
+                if (!searches.isBusy()) applySnapshot(city, snapshot, null); // a newer search is on its way
+            }),
+            (delayMillis, lastError) -> SwingUtilities.invokeLater(() -> showAutoRefreshStatus(delayMillis, lastError)));
 
         // Listeners
         searchButton.addActionListener(e -> onSearch());
@@ -96,7 +111,7 @@ public class WeatherSystem_API_Java extends JFrame {
         favoritesCombo.addActionListener(e -> {
             if (favoritesCombo.getSelectedItem() != null && !favoritesCombo.getSelectedItem().equals("Favorites")) {
                 String city = (String) favoritesCombo.getSelectedItem();
-                searchField.setText(city);
+                autocomplete.setText(city);
                 performSearch(city);
             }
         });
@@ -104,28 +119,56 @@ public class WeatherSystem_API_Java extends JFrame {
         unitToggle.addActionListener(e -> {
             isCelsius = !isCelsius;
             unitToggle.setText(isCelsius ? "°F" : "°C");
+            forecastView.setCelsius(isCelsius);
             if (currentWeatherData != null) {
                 updateUIWithData(currentWeatherData);
             }
         });
 
         autoButton.addActionListener(e -> {
-            autoTimer.start();
+            autoRefresh.start(currentWeatherData != null ? currentWeatherData.observedAt : 0);
             autoButton.setEnabled(false);
             stopAutoButton.setEnabled(true);
-            showStatus("Auto-refresh enabled (every 30s)");
         });
         
+        dashboardButton.addActionListener(e -> openDashboard());
+        diagnosticsButton.addActionListener(e -> openDiagnostics());
+        
         stopAutoButton.addActionListener(e -> {
-            autoTimer.stop();
+            autoRefresh.stop();
             autoButton.setEnabled(true);
             stopAutoButton.setEnabled(false);
             showStatus("Auto-refresh stopped");
         });
 
-        // Start with default city
-        searchField.setText(currentCity);
-        performSearch(currentCity);
+        // Nothing is fetched while the window is minimized; closing it saves the quota count
+        // and history, and the JVM exits once the last window is gone
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowIconified(WindowEvent e) {
+                autoRefresh.pause();
+            }
+
+            @Override
+            public void windowDeiconified(WindowEvent e) {
+                autoRefresh.resume();
+            }
+
+            @Override
+            public void windowClosed(WindowEvent e) {
+                searches.cancel();
+                autoRefresh.close();
+                station.close();
+            }
+        });
+
+        // Start with default city: paint the last saved data right away, then revalidate in the background
+        autocomplete.setText(currentCity);
+        if (showSavedData(currentCity)) {
+            startFetch(currentCity);
+        } else {
+            performSearch(currentCity);
+        }
     }
     
     /**
@@ -277,10 +320,8 @@ public class WeatherSystem_API_Java extends JFrame {
         forecastTitle.setFont(new Font("Segoe UI Semibold", Font.BOLD, 16));
         forecastTitle.setForeground(new Color(40, 60, 80));
         
-        forecastPanel.setOpaque(false);
-        
         forecastSection.add(forecastTitle, BorderLayout.NORTH);
-        forecastSection.add(forecastPanel, BorderLayout.CENTER);
+        forecastSection.add(forecastView, BorderLayout.CENTER);
 
         mainCard.add(topSection, BorderLayout.NORTH);
         mainCard.add(statsGrid, BorderLayout.CENTER);
@@ -352,6 +393,8 @@ public class WeatherSystem_API_Java extends JFrame {
         
         styleButton(autoButton, new Color(50, 150, 90), Color.WHITE);
         styleButton(stopAutoButton, new Color(200, 60, 60), Color.WHITE);
+        styleButton(dashboardButton, new Color(20, 100, 180), Color.WHITE);
+        styleButton(diagnosticsButton, new Color(110, 120, 140), Color.WHITE);
         
         stopAutoButton.setEnabled(false);
         
@@ -360,6 +403,8 @@ public class WeatherSystem_API_Java extends JFrame {
         
         bottom.add(autoButton);
         bottom.add(stopAutoButton);
+        bottom.add(dashboardButton);
+        bottom.add(diagnosticsButton);
         bottom.add(Box.createRigidArea(new Dimension(20, 0)));
         bottom.add(updatedLabel);
         
@@ -451,12 +496,29 @@ public class WeatherSystem_API_Java extends JFrame {
         }
     }
 
+    private void openDashboard() {
+        if (dashboard == null || !dashboard.isDisplayable()) {
+            dashboard = new DashboardDialog();
+        }
+        dashboard.setVisible(true);
+        dashboard.toFront();
+        dashboard.refreshAll(QuotaLimiter.Priority.INTERACTIVE);
+    }
+
+    private void openDiagnostics() {
+        if (diagnostics == null || !diagnostics.isDisplayable()) {
+            diagnostics = new DiagnosticsDialog();
+        }
+        diagnostics.setVisible(true);
+        diagnostics.toFront();
+    }
+
     private void showStatus(String message) {
         updatedLabel.setText(message);
     }
 
     private void performSearch(String city) {
-        String queryCity = capitalize(city); // Capitalize for display while loading
+        String queryCity = WeatherFormat.capitalize(city); // Capitalize for display while loading
         
         cityLabel.setText("Loading " + queryCity + "...");
         tempLabel.setText("--°");
@@ -464,45 +526,104 @@ public class WeatherSystem_API_Java extends JFrame {
         descLabel.setText("Fetching data...");
         feelsLikeLabel.setText("Please wait");
         
-        // Use SwingWorker to perform network operations in the background
-        new SwingWorker<WeatherData, Void>() {
-            protected WeatherData doInBackground() {
-                return station.fetchWeatherFromAPI(city);
+        searches.submit(city);
+    }
+
+    /**
+     * Renders whatever the station has saved on disk for city.
+     * Returns false if nothing was saved, in which case the UI is left untouched.
+     */
+    private boolean showSavedData(String city) {
+        WeatherData saved = station.cachedWeather(city);
+        if (saved == null) {
+            return false;
+        }
+        currentWeatherData = saved;
+        currentCity = WeatherFormat.capitalize(city);
+        updateUIWithData(saved);
+        List<ForecastData> forecast = station.cachedForecast(city);
+        if (!forecast.isEmpty()) {
+            forecastView.setForecast(forecast);
+        }
+        showStatus("Saved data from " + WeatherFormat.localTime(station.cachedWeatherTime(city))
+                   + " • refreshing...");
+        return true;
+    }
+
+    private void startFetch(String city) {
+        // Current weather and forecast are fetched concurrently; both are applied in one EDT pass
+        searches.submitNow(city);
+    }
+
+    private void showAutoRefreshStatus(long delayMillis, Throwable lastError) {
+        if (!autoRefresh.isRunning()) return;
+        long seconds = TimeUnit.MILLISECONDS.toSeconds(delayMillis);
+        String next = seconds >= 60 ? (seconds / 60) + " min" : seconds + "s";
+        if (lastError != null) {
+            showStatus("Auto-refresh failed (" + lastError.getMessage() + "), retrying in " + next);
+        } else if (currentWeatherData != null) {
+            showStatus("Last updated: " + WeatherFormat.localTimeWithSeconds(System.currentTimeMillis())
+                       + " • next check in " + next);
+        }
+    }
+
+    private void applySnapshot(String queryCity, WeatherSnapshot snapshot, Throwable error) {
+        if (error != null) {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (currentWeatherData != null) {
+                // Upstream trouble: keep what is on screen instead of wiping it
+                updateUIWithData(currentWeatherData);
+                showStatus("Unable to fetch " + queryCity + " (" + cause.getMessage() + ") • showing " + currentCity);
+            } else {
+                showError("Unable to fetch weather data for " + queryCity + " (" + cause.getMessage() + ")");
             }
-            
-            protected void done() {
-                try {
-                    WeatherData data = get();
-                    if (data == null) {
-                        // Check if the error was due to the API Key being missing
-                        if (station.isApiKeyMissing()) {
-                            showError("API Key Missing! Please replace \"YOUR_API_KEY\" in the code.");
-                        } else {
-                            // City not found or general API failure
-                            showError("Unable to fetch weather data for " + queryCity + ". Please check the city name.");
-                        }
-                        return;
-                    }
-                    
-                    // --- FIX: Only update currentCity and searchField on SUCCESS ---
-                    currentWeatherData = data;
-                    currentCity = queryCity; // Store the successfully fetched and capitalized city name
-                    searchField.setText(currentCity); // Update search field with the clean name
-                    // -------------------------------------------------------------
-                    
-                    updateUIWithData(data);
-                    
-                    // Fetch 5-day forecast
-                    fetchForecast(currentCity); // Use the clean/validated city name
-                    
-                } catch (Exception ex) {
-                    showError("Error: " + ex.getMessage());
+            return;
+        }
+
+        WeatherData data = snapshot.weather;
+        if (data == null) {
+            // Check if the error was due to the API Key being missing
+            if (station.isApiKeyMissing()) {
+                showError("API Key Missing! Please replace \"YOUR_API_KEY\" in the code.");
+            } else {
+                // City not found or general API failure; offer close names from the city list if there is one
+                List<CityIndex.City> close = station.cityIndex().suggest(queryCity, 3);
+                if (close.isEmpty()) {
+                    showError("Unable to fetch weather data for " + queryCity + ". Please check the city name.");
+                } else {
+                    StringJoiner names = new StringJoiner(", ");
+                    close.forEach(c -> names.add(c.toString()));
+                    showError("No city named " + queryCity + ". Did you mean: " + names + "?");
                 }
             }
-        }.execute();
+            return;
+        }
+
+        // --- FIX: Only update currentCity and searchField on SUCCESS ---
+        currentWeatherData = data;
+        currentCity = queryCity; // Store the successfully fetched and capitalized city name
+        autocomplete.setText(currentCity); // Update search field with the clean name
+        // -------------------------------------------------------------
+
+        updateUIWithData(data);
+
+        // 5-day forecast arrived together with the current weather
+        if (!snapshot.forecast.isEmpty()) {
+            long start = System.nanoTime();
+            forecastView.setForecast(snapshot.forecast);
+            station.metrics().timer("ui.forecast").recordSince(start);
+        }
+
+        if (snapshot.isStale()) {
+            showStatus("Saved data from " + WeatherFormat.localTime(snapshot.savedAt)
+                       + " • live data unavailable (" + snapshot.staleCause.getMessage() + ")");
+        }
+
+        autoRefresh.observed(snapshot);
     }
 
     private void updateUIWithData(WeatherData data) {
+        long start = System.nanoTime();
         cityLabel.setText(currentCity); // Use the currentCity variable, now set from successful fetch
         
         double temp = isCelsius ? data.temperature : celsiusToFahrenheit(data.temperature);
@@ -511,8 +632,8 @@ public class WeatherSystem_API_Java extends JFrame {
         
         tempLabel.setText(String.format("%.0f%s", temp, unit));
         feelsLikeLabel.setText(String.format("Feels like: %.0f%s", feelsLike, unit));
-        descLabel.setText(capitalize(data.description));
-        mainIcon.setText(getEmojiForWeatherCode(data.weatherId));
+        descLabel.setText(WeatherFormat.capitalize(data.description));
+        mainIcon.setText(WeatherFormat.getEmojiForWeatherCode(data.weatherId));
         
         humidityLabel.setText(String.format("%.0f%%", data.humidity));
         windLabel.setText(String.format("%.1f m/s", data.windSpeed));
@@ -522,67 +643,9 @@ public class WeatherSystem_API_Java extends JFrame {
         sunriseLabel.setText(data.sunrise);
         sunsetLabel.setText(data.sunset);
         
-        updatedLabel.setText("Last updated: " + new SimpleDateFormat("hh:mm:ss a").format(new Date()));
-    }
-
-    private void fetchForecast(String city) {
-        new SwingWorker<List<ForecastData>, Void>() {
-            protected List<ForecastData> doInBackground() {
-                return station.fetch5DayForecast(city);
-            }
-            
-            protected void done() {
-                try {
-                    List<ForecastData> forecast = get();
-                    if (forecast != null && !forecast.isEmpty()) {
-                        updateForecastUI(forecast);
-                    }
-                } catch (Exception ex) {
-                    System.err.println("Forecast error: " + ex.getMessage());
-                }
-            }
-        }.execute();
-    }
-
-    private void updateForecastUI(List<ForecastData> forecast) {
-        forecastPanel.removeAll();
-        
-        for (int i = 0; i < Math.min(5, forecast.size()); i++) {
-            ForecastData f = forecast.get(i);
-            JPanel dayCard = new JPanel();
-            dayCard.setLayout(new BoxLayout(dayCard, BoxLayout.Y_AXIS));
-            dayCard.setBackground(new Color(248, 250, 255));
-            dayCard.setBorder(BorderFactory.createCompoundBorder(
-                new LineBorder(new Color(220, 230, 245), 1, true),
-                new EmptyBorder(8, 6, 8, 6)
-            ));
-            
-            JLabel dayLabel = new JLabel(f.day, SwingConstants.CENTER);
-            dayLabel.setFont(new Font("Segoe UI", Font.BOLD, 11));
-            dayLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
-            
-            JLabel icon = new JLabel(getEmojiForWeatherCode(f.weatherId), SwingConstants.CENTER);
-            icon.setFont(new Font("Segoe UI Emoji", Font.PLAIN, 28));
-            icon.setAlignmentX(Component.CENTER_ALIGNMENT);
-            
-            double temp = isCelsius ? f.temp : celsiusToFahrenheit(f.temp);
-            String unit = isCelsius ? "°C" : "°F";
-            JLabel tempLabel = new JLabel(String.format("%.0f%s", temp, unit), SwingConstants.CENTER);
-            tempLabel.setFont(new Font("Segoe UI", Font.BOLD, 13));
-            tempLabel.setForeground(new Color(230, 80, 50));
-            tempLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
-            
-            dayCard.add(dayLabel);
-            dayCard.add(Box.createRigidArea(new Dimension(0, 4)));
-            dayCard.add(icon);
-            dayCard.add(Box.createRigidArea(new Dimension(0, 4)));
-            dayCard.add(tempLabel);
-            
-            forecastPanel.add(dayCard);
-        }
-        
-        forecastPanel.revalidate();
-        forecastPanel.repaint();
+        updatedLabel.setText("Last updated: " + WeatherFormat.localTimeWithSeconds(System.currentTimeMillis()));
+        updatedLabel.setToolTipText(station.cacheStats());
+        station.metrics().timer("ui.current").recordSince(start);
     }
 
     private void showError(String message) {
@@ -600,245 +663,159 @@ public class WeatherSystem_API_Java extends JFrame {
         updatedLabel.setText("Update failed");
         
         // Clear forecast on error
-        forecastPanel.removeAll();
-        forecastPanel.revalidate();
-        forecastPanel.repaint();
+        forecastView.clear();
     }
 
     private double celsiusToFahrenheit(double celsius) {
         return celsius * 9.0 / 5.0 + 32.0;
     }
 
-    private static String capitalize(String s) {
-        if (s == null || s.isEmpty()) return s;
-        String[] words = s.split(" ");
-        StringBuilder result = new StringBuilder();
-        for (String word : words) {
-            if (!word.isEmpty()) {
-                result.append(Character.toUpperCase(word.charAt(0)))
-                      .append(word.substring(1).toLowerCase())
-                      .append(" ");
-            }
+    // -------------------- Diagnostics --------------------
+    /** Stage latencies and counters of the engine and this window, refreshed every second while open. */
+    private class DiagnosticsDialog extends JDialog {
+        private final JTextArea report = new JTextArea();
+        private final javax.swing.Timer refreshTimer = new javax.swing.Timer(1000, e -> refresh());
+
+        DiagnosticsDialog() {
+            super(WeatherSystem_API_Java.this, "Diagnostics", false);
+            setSize(560, 460);
+            setLocationRelativeTo(WeatherSystem_API_Java.this);
+            setDefaultCloseOperation(JDialog.DISPOSE_ON_CLOSE);
+
+            report.setEditable(false);
+            report.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+            report.setBorder(new EmptyBorder(8, 10, 8, 10));
+            add(new JScrollPane(report), BorderLayout.CENTER);
+
+            addWindowListener(new WindowAdapter() {
+                @Override
+                public void windowClosed(WindowEvent e) {
+                    refreshTimer.stop();
+                }
+            });
+            refresh();
+            refreshTimer.start();
         }
-        return result.toString().trim();
-    }
-
-    private String getEmojiForWeatherCode(int code) {
-        if (code >= 200 && code < 300) return "⛈️";  // Thunderstorm
-        if (code >= 300 && code < 400) return "🌦️";  // Drizzle
-        if (code >= 500 && code < 600) return "🌧️";  // Rain
-        if (code >= 600 && code < 700) return "❄️";  // Snow
-        if (code >= 700 && code < 800) return "🌫️";  // Atmosphere (fog, mist, etc.)
-        if (code == 800) return "☀️";                // Clear
-        if (code == 801) return "🌤️";               // Few clouds
-        if (code == 802) return "⛅";                // Scattered clouds
-        if (code >= 803) return "☁️";                // Overcast
-        return "🌡️";
-    }
 
-    // -------------------- Data Models --------------------
-    static class WeatherData {
-        double temperature, feelsLike, humidity, windSpeed, pressure, visibility;
-        int weatherId;
-        String description, sunrise, sunset;
-        
-        public WeatherData(double temperature, double feelsLike, double humidity, 
-                          double windSpeed, double pressure, double visibility,
-                          int weatherId, String description, String sunrise, String sunset) {
-            this.temperature = temperature;
-            this.feelsLike = feelsLike;
-            this.humidity = humidity;
-            this.windSpeed = windSpeed;
-            this.pressure = pressure;
-            this.visibility = visibility;
-            this.weatherId = weatherId;
-            this.description = description;
-            this.sunrise = sunrise;
-            this.sunset = sunset;
+        private void refresh() {
+            String text = station.metrics().getReport();
+            if (!text.equals(report.getText())) {
+                report.setText(text);
+                report.setCaretPosition(0);
+            }
         }
     }
 
-    static class ForecastData {
-        String day;
-        double temp;
-        int weatherId;
-        
-        public ForecastData(String day, double temp, int weatherId) {
-            this.day = day;
-            this.temp = temp;
-            this.weatherId = weatherId;
+    // -------------------- Dashboard --------------------
+    /**
+     * Live view of every favorite city. All favorites are refreshed together through
+     * WeatherStation.fetchManyAsync, so N cities cost about one round trip.
+     */
+    private class DashboardDialog extends JDialog {
+        private final JPanel grid = new JPanel(new GridLayout(0, 3, 10, 10));
+        private final JLabel status = new JLabel(" ");
+        private final javax.swing.Timer refreshTimer = new javax.swing.Timer(60000, e -> refreshAll(QuotaLimiter.Priority.BACKGROUND));
+        private boolean refreshing;
+
+        DashboardDialog() {
+            super(WeatherSystem_API_Java.this, "Favorites Dashboard", false);
+            setSize(640, 420);
+            setLocationRelativeTo(WeatherSystem_API_Java.this);
+            setDefaultCloseOperation(JDialog.DISPOSE_ON_CLOSE);
+            setLayout(new BorderLayout(10, 10));
+            getContentPane().setBackground(new Color(235, 245, 250));
+
+            grid.setOpaque(false);
+            grid.setBorder(new EmptyBorder(12, 12, 0, 12));
+
+            JButton refreshButton = new JButton("Refresh All");
+            styleButton(refreshButton, new Color(50, 150, 90), Color.WHITE);
+            refreshButton.addActionListener(e -> refreshAll(QuotaLimiter.Priority.INTERACTIVE));
+
+            status.setFont(new Font("Segoe UI", Font.PLAIN, 12));
+            status.setForeground(new Color(100, 100, 120));
+
+            JPanel bottom = new JPanel(new FlowLayout(FlowLayout.CENTER, 16, 10));
+            bottom.setOpaque(false);
+            bottom.add(refreshButton);
+            bottom.add(status);
+
+            add(new JScrollPane(grid), BorderLayout.CENTER);
+            add(bottom, BorderLayout.SOUTH);
+
+            addWindowListener(new WindowAdapter() {
+                @Override
+                public void windowClosed(WindowEvent e) {
+                    refreshTimer.stop();
+                }
+            });
+            refreshTimer.start();
         }
-    }
 
-    // -------------------- Weather API --------------------
-    class WeatherStation {
-        // !!! IMPORTANT: The API key has been replaced with the key you provided. 
-        // If the error persists, please wait 1-2 hours for key activation or check your network.
-        private final String API_KEY = "cc9bf6c8822ed2764ad84ec36d5823e4"; // <--- LINE 663: INSERTED YOUR NEW KEY
+        /** The timer refreshes in the background; Refresh All is a person waiting. */
+        void refreshAll(QuotaLimiter.Priority priority) {
+            if (refreshing) return; // the previous round is still running
+            refreshing = true;
+            List<String> cities = new ArrayList<>(favoriteCities);
+            status.setText("Refreshing " + cities.size() + " cities...");
+            long started = System.nanoTime();
+            station.fetchManyAsync(cities, priority).whenComplete((results, error) -> SwingUtilities.invokeLater(() -> {
+                refreshing = false;
+                if (error != null) {
+                    status.setText("Refresh failed: " + error.getMessage());
+                    return;
+                }
+                render(results);
+                long ok = results.values().stream().filter(Objects::nonNull).count();
+                status.setText(String.format("Updated %d of %d cities in %d ms", ok, results.size(),
+                                             TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started)));
+                status.setToolTipText("API quota: " + station.quota());
+            }));
+        }
 
-        public boolean isApiKeyMissing() {
-            return API_KEY.equals("YOUR_API_KEY");
+        private void render(Map<String, WeatherData> results) {
+            grid.removeAll();
+            for (Map.Entry<String, WeatherData> entry : results.entrySet()) {
+                grid.add(makeCityCard(entry.getKey(), entry.getValue()));
+            }
+            grid.revalidate();
+            grid.repaint();
         }
 
-        public WeatherData fetchWeatherFromAPI(String city) {
-            try {
-                if (isApiKeyMissing()) {
-                    return null; // Return null so the calling SwingWorker can show the missing key error
-                }
-                
-                String q = URLEncoder.encode(city, "UTF-8");
-                String api = "https://api.openweathermap.org/data/2.5/weather?q=" + q + 
-                            "&appid=" + API_KEY + "&units=metric";
-                
-                JSONObject obj = fetchJSON(api);
-                if (obj == null) return null;
-
-                // Check for city not found error (OpenWeatherMap usually returns code 404)
-                if (obj.has("cod") && obj.optInt("cod") == 404) {
-                     return null;
-                }
+        private JPanel makeCityCard(String city, WeatherData data) {
+            JPanel card = new JPanel();
+            card.setLayout(new BoxLayout(card, BoxLayout.Y_AXIS));
+            card.setBackground(Color.WHITE);
+            card.setBorder(BorderFactory.createCompoundBorder(
+                new LineBorder(new Color(220, 230, 245), 1, true),
+                new EmptyBorder(10, 10, 10, 10)
+            ));
 
-                JSONObject main = obj.getJSONObject("main");
-                JSONObject wind = obj.optJSONObject("wind");
-                JSONObject sys = obj.optJSONObject("sys");
-                JSONArray weather = obj.optJSONArray("weather");
-
-                double temp = main.optDouble("temp", 0);
-                double feelsLike = main.optDouble("feels_like", temp);
-                double humidity = main.optDouble("humidity", 0);
-                double pressure = main.optDouble("pressure", 0);
-                double windSpeed = wind != null ? wind.optDouble("speed", 0) : 0;
-                double visibility = obj.optDouble("visibility", 0);
-                
-                int weatherId = 800;
-                String description = "Unknown";
-                if (weather != null && weather.length() > 0) {
-                    JSONObject w = weather.getJSONObject(0);
-                    weatherId = w.optInt("id", 800);
-                    description = w.optString("description", "Unknown");
-                }
-                
-                String sunrise = "--";
-                String sunset = "--";
-                if (sys != null) {
-                    sunrise = convertUnixToTime(sys.optLong("sunrise", 0));
-                    sunset = convertUnixToTime(sys.optLong("sunset", 0));
-                }
+            JLabel name = new JLabel(city, SwingConstants.CENTER);
+            name.setFont(new Font("Segoe UI", Font.BOLD, 14));
+            name.setForeground(new Color(20, 80, 120));
 
-                return new WeatherData(temp, feelsLike, humidity, windSpeed, pressure, visibility,
-                                       weatherId, description, sunrise, sunset);
+            JLabel icon = new JLabel(data != null ? WeatherFormat.getEmojiForWeatherCode(data.weatherId) : "❌", SwingConstants.CENTER);
+            icon.setFont(new Font("Segoe UI Emoji", Font.PLAIN, 32));
 
-            } catch (Exception e) {
-                System.err.println("API Fetch Error: " + e.getMessage());
-                return null;
-            }
-        }
-        
-        public List<ForecastData> fetch5DayForecast(String city) {
-            List<ForecastData> forecastList = new ArrayList<>();
-            try {
-                if (isApiKeyMissing()) {
-                    return Collections.emptyList();
-                }
-                
-                String q = URLEncoder.encode(city, "UTF-8");
-                String api = "https://api.openweathermap.org/data/2.5/forecast?q=" + q + 
-                            "&appid=" + API_KEY + "&units=metric";
-
-                JSONObject obj = fetchJSON(api);
-                if (obj == null || obj.has("cod") && obj.optInt("cod") != 200) return forecastList;
-                
-                JSONArray list = obj.getJSONArray("list");
-                
-                // Use a map to track and select one forecast point per day (around noon is preferred)
-                Map<String, JSONObject> dayMap = new LinkedHashMap<>();
-                SimpleDateFormat dayFormat = new SimpleDateFormat("EEE"); // Day of the week (e.g., Mon)
-
-                for (int i = 0; i < list.length(); i++) {
-                    JSONObject item = list.getJSONObject(i);
-                    long dt = item.getLong("dt");
-                    String day = dayFormat.format(new Date(dt * 1000));
-                    
-                    // Only consider if the day hasn't been added yet,
-                    // or if it's the 12:00:00 forecast (for a good representative temperature)
-                    if (!dayMap.containsKey(day) || item.getString("dt_txt").contains("12:00:00")) {
-                        dayMap.put(day, item);
-                    }
-                }
-                
-                // Convert the map entries to ForecastData
-                for (Map.Entry<String, JSONObject> entry : dayMap.entrySet()) {
-                    JSONObject item = entry.getValue();
-                    JSONObject main = item.getJSONObject("main");
-                    JSONArray weather = item.getJSONArray("weather");
-                    
-                    double temp = main.optDouble("temp", 0);
-                    int weatherId = 800;
-                    if (weather.length() > 0) {
-                        weatherId = weather.getJSONObject(0).optInt("id", 800);
-                    }
-                    
-                    forecastList.add(new ForecastData(entry.getKey(), temp, weatherId));
-                }
-                
-                // Ensure we return up to 5 distinct days (if available)
-                // If the first item is today, we only want the next 5 days.
-                if (forecastList.size() > 5) {
-                    // This handles the case where the forecast includes the current day.
-                    return forecastList.subList(1, 6); 
-                } else {
-                    return forecastList;
-                }
-                
-            } catch (Exception e) {
-                System.err.println("Forecast Fetch Error: " + e.getMessage());
+            String tempText = "--°";
+            if (data != null) {
+                double temp = isCelsius ? data.temperature : celsiusToFahrenheit(data.temperature);
+                tempText = String.format("%.0f%s", temp, isCelsius ? "°C" : "°F");
             }
-            return Collections.emptyList();
-        }
+            JLabel temp = new JLabel(tempText, SwingConstants.CENTER);
+            temp.setFont(new Font("Segoe UI", Font.BOLD, 18));
+            temp.setForeground(new Color(230, 80, 50));
 
-        private JSONObject fetchJSON(String urlString) throws IOException, JSONException {
-            URL url = new URL(urlString);
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("GET");
-            conn.connect();
-
-            int responseCode = conn.getResponseCode();
-            if (responseCode != 200) {
-                // Read the error stream for detailed messages
-                try (BufferedReader reader = new BufferedReader(new InputStreamReader(conn.getErrorStream()))) {
-                    StringBuilder errorResponse = new StringBuilder();
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        errorResponse.append(line);
-                    }
-                    if (errorResponse.length() > 0) {
-                         System.err.println("API Error Response: " + errorResponse.toString());
-                         // Try to parse error as JSON to check for 404
-                         try {
-                             return new JSONObject(errorResponse.toString());
-                         } catch (JSONException ignored) {
-                             // Ignore if not JSON
-                         }
-                    }
-                }
-                throw new IOException("HTTP response code: " + responseCode);
-            }
+            JLabel desc = new JLabel(data != null ? WeatherFormat.capitalize(data.description) : "Unavailable", SwingConstants.CENTER);
+            desc.setFont(new Font("Segoe UI", Font.PLAIN, 12));
+            desc.setForeground(new Color(60, 60, 80));
 
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(conn.getInputStream()))) {
-                StringBuilder response = new StringBuilder();
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    response.append(line);
-                }
-                return new JSONObject(response.toString());
+            for (JLabel label : new JLabel[] {name, icon, temp, desc}) {
+                label.setAlignmentX(Component.CENTER_ALIGNMENT);
+                card.add(label);
             }
-        }
-        
-        private String convertUnixToTime(long unixSeconds) {
-            if (unixSeconds == 0) return "--";
-            Date date = new Date(unixSeconds * 1000L);
-            SimpleDateFormat sdf = new SimpleDateFormat("hh:mm a");
-            return sdf.format(date);
+            return card;
         }
     }
 }
\ No newline at end of file
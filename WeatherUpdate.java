@@ -0,0 +1,50 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * One push from a {@link WeatherFeeds} feed: the latest observation for a city plus
+ * the fields that differ from the last observation this subscriber received. The
+ * first update a subscriber gets carries every field.
+ */
+final class WeatherUpdate {
+    final String city;
+    final WeatherData weather;
+    /** Changed fields under their /weather JSON names, in that order. */
+    final Map<String, Object> changed;
+
+    WeatherUpdate(String city, WeatherData weather, Map<String, Object> changed) {
+        this.city = city;
+        this.weather = weather;
+        this.changed = changed;
+    }
+
+    /** The fields of after that differ from before (all of them if before is null); NaN coordinates are left out. */
+    static Map<String, Object> diff(WeatherData before, WeatherData after) {
+        Map<String, Object> changed = new LinkedHashMap<>();
+        put(changed, "cityId", before == null ? null : before.cityId, after.cityId);
+        put(changed, "observedAt", before == null ? null : before.observedAt, after.observedAt);
+        put(changed, "utcOffset", before == null ? null : before.utcOffset, after.utcOffset);
+        put(changed, "temperature", before == null ? null : before.temperature, after.temperature);
+        put(changed, "feelsLike", before == null ? null : before.feelsLike, after.feelsLike);
+        put(changed, "humidity", before == null ? null : before.humidity, after.humidity);
+        put(changed, "windSpeed", before == null ? null : before.windSpeed, after.windSpeed);
+        put(changed, "pressure", before == null ? null : before.pressure, after.pressure);
+        put(changed, "visibility", before == null ? null : before.visibility, after.visibility);
+        put(changed, "weatherId", before == null ? null : before.weatherId, after.weatherId);
+        put(changed, "description", before == null ? null : before.description, after.description);
+        put(changed, "sunrise", before == null ? null : before.sunrise, after.sunrise);
+        put(changed, "sunset", before == null ? null : before.sunset, after.sunset);
+        if (!Double.isNaN(after.lat) && !Double.isNaN(after.lon)) {
+            put(changed, "lat", before == null ? null : before.lat, after.lat);
+            put(changed, "lon", before == null ? null : before.lon, after.lon);
+        }
+        return changed;
+    }
+
+    private static void put(Map<String, Object> changed, String field, Object before, Object after) {
+        if (after != null && !Objects.equals(before, after)) {
+            changed.put(field, after);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package weatherbench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+
+/**
+ * JMH refuses benchmarks in the default package, and named packages cannot import
+ * the application's default-package classes. These handles bridge the gap; held in
+ * static finals they are constant-folded by the JIT, so the indirection does not
+ * show up in the measurements.
+ */
+final class AppAccess {
+    private AppAccess() {
+    }
+
+    static Class<?> type(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Application classes must be on the benchmark classpath", e);
+        }
+    }
+
+    /** Static or instance method; for an instance method the receiver becomes the first argument. */
+    static MethodHandle method(String type, String name, Class<?>... params) {
+        try {
+            Method m = type(type).getDeclaredMethod(name, params);
+            m.setAccessible(true);
+            return MethodHandles.lookup().unreflect(m);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static MethodHandle constructor(String type, Class<?>... params) {
+        try {
+            Constructor<?> c = type(type).getDeclaredConstructor(params);
+            c.setAccessible(true);
+            return MethodHandles.lookup().unreflectConstructor(c);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package weatherbench;
+
+import java.lang.invoke.MethodHandle;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Day bucketing of the 40 three-hourly forecast points, isolated from JSON parsing:
+ * the points of the recorded /forecast fixture are pre-extracted, replayed into a
+ * ForecastSeries, split into local days and reduced to the 5-day strip.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DayBucketingBenchmark {
+    private static final MethodHandle NEW_SERIES = AppAccess.constructor("ForecastSeries", int.class, int.class);
+    private static final MethodHandle ADD = AppAccess.method("ForecastSeries", "add",
+        long.class, float.class, float.class, float.class, float.class, int.class);
+    private static final MethodHandle SEAL = AppAccess.method("ForecastSeries", "seal");
+    private static final MethodHandle DAILY = AppAccess.method("ForecastSeries", "daily");
+
+    private int utcOffset;
+    private long[] dt;
+    private float[] temp;
+    private float[] humidity;
+    private float[] wind;
+    private float[] pop;
+    private int[] weatherId;
+
+    @Setup
+    public void setup() {
+        JSONObject payload = new JSONObject(new String(Fixtures.load("forecast.json"), StandardCharsets.UTF_8));
+        utcOffset = payload.getJSONObject("city").getInt("timezone");
+        JSONArray list = payload.getJSONArray("list");
+        int n = list.length();
+        dt = new long[n];
+        temp = new float[n];
+        humidity = new float[n];
+        wind = new float[n];
+        pop = new float[n];
+        weatherId = new int[n];
+        for (int i = 0; i < n; i++) {
+            JSONObject item = list.getJSONObject(i);
+            dt[i] = item.getLong("dt");
+            temp[i] = item.getJSONObject("main").getFloat("temp");
+            humidity[i] = item.getJSONObject("main").getFloat("humidity");
+            wind[i] = item.getJSONObject("wind").getFloat("speed");
+            pop[i] = item.optFloat("pop", 0);
+            weatherId[i] = item.getJSONArray("weather").getJSONObject(0).getInt("id");
+        }
+    }
+
+    @Benchmark
+    public Object bucketDays() throws Throwable {
+        Object series = NEW_SERIES.invoke(dt.length, utcOffset);
+        for (int i = 0; i < dt.length; i++) {
+            ADD.invoke(series, dt[i], temp[i], humidity[i], wind[i], pop[i], weatherId[i]);
+        }
+        return DAILY.invoke(SEAL.invoke(series));
+    }
+}
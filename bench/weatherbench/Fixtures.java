@@ -0,0 +1,20 @@
+package weatherbench;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/** Recorded OpenWeatherMap payloads under bench/fixtures (override the directory with -Dbench.fixtures). */
+final class Fixtures {
+    private Fixtures() {
+    }
+
+    static byte[] load(String name) {
+        try {
+            return Files.readAllBytes(Paths.get(System.getProperty("bench.fixtures", "bench/fixtures"), name));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Fixture " + name + " not found; run from the project root", e);
+        }
+    }
+}
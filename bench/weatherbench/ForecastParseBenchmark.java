@@ -0,0 +1,83 @@
+package weatherbench;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.json.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Compares the streaming forecast parser with the previous org.json tree walk.
+ * Both read the same recorded 40-entry /forecast payload; no network is used.
+ *
+ * See bench/README.md for how to build and run; -prof gc reports bytes allocated per parse.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ForecastParseBenchmark {
+    private static final MethodHandle STREAMING_PARSE =
+        AppAccess.method("ForecastParser", "parse", InputStream.class);
+    private static final MethodHandle NEW_FORECAST_DATA =
+        AppAccess.constructor("ForecastData", String.class, double.class, int.class);
+
+    private byte[] payload;
+
+    @Setup
+    public void setup() {
+        payload = Fixtures.load("forecast.json");
+    }
+
+    @Benchmark
+    public Object streaming() throws Throwable {
+        return STREAMING_PARSE.invoke(new ByteArrayInputStream(payload));
+    }
+
+    @Benchmark
+    public Object orgJsonTree() throws Throwable {
+        return parseWithOrgJson(new JSONObject(new String(payload, StandardCharsets.UTF_8)));
+    }
+
+    /** The org.json implementation that fetch5DayForecast used before the streaming parser. */
+    static List<Object> parseWithOrgJson(JSONObject obj) throws Throwable {
+        List<Object> forecastList = new ArrayList<>();
+        if (obj.has("cod") && obj.optInt("cod") != 200) return null;
+
+        JSONArray list = obj.getJSONArray("list");
+        Map<String, JSONObject> dayMap = new LinkedHashMap<>();
+        SimpleDateFormat dayFormat = new SimpleDateFormat("EEE");
+
+        for (int i = 0; i < list.length(); i++) {
+            JSONObject item = list.getJSONObject(i);
+            long dt = item.getLong("dt");
+            String day = dayFormat.format(new Date(dt * 1000));
+            if (!dayMap.containsKey(day) || item.getString("dt_txt").contains("12:00:00")) {
+                dayMap.put(day, item);
+            }
+        }
+
+        for (Map.Entry<String, JSONObject> entry : dayMap.entrySet()) {
+            JSONObject item = entry.getValue();
+            JSONObject main = item.getJSONObject("main");
+            JSONArray weather = item.getJSONArray("weather");
+            double temp = main.optDouble("temp", 0);
+            int weatherId = 800;
+            if (weather.length() > 0) {
+                weatherId = weather.getJSONObject(0).optInt("id", 800);
+            }
+            forecastList.add(NEW_FORECAST_DATA.invoke(entry.getKey(), temp, weatherId));
+        }
+
+        if (forecastList.size() > 5) {
+            return forecastList.subList(1, 6);
+        }
+        return forecastList;
+    }
+}
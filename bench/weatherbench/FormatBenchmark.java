@@ -0,0 +1,52 @@
+package weatherbench;
+
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/** Per-refresh text formatting: sunrise/sunset times, description casing and the weather icon lookup. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FormatBenchmark {
+    private static final MethodHandle CONVERT_UNIX_TO_TIME =
+        AppAccess.method("WeatherFormat", "convertUnixToTime", long.class, int.class);
+    private static final MethodHandle CAPITALIZE =
+        AppAccess.method("WeatherFormat", "capitalize", String.class);
+    private static final MethodHandle EMOJI =
+        AppAccess.method("WeatherFormat", "getEmojiForWeatherCode", int.class);
+
+    // Sunrise and timezone of the recorded /weather fixture
+    private long sunrise = 1760596389L;
+    private int utcOffset = 3600;
+
+    @State(Scope.Benchmark)
+    public static class Description {
+        @Param({"broken clouds", "light intensity shower rain"})
+        String value;
+    }
+
+    @State(Scope.Benchmark)
+    public static class WeatherId {
+        @Param({"211", "803"})
+        int value;
+    }
+
+    @Benchmark
+    public Object convertUnixToTime() throws Throwable {
+        return CONVERT_UNIX_TO_TIME.invoke(sunrise, utcOffset);
+    }
+
+    @Benchmark
+    public Object capitalize(Description description) throws Throwable {
+        return CAPITALIZE.invoke(description.value);
+    }
+
+    @Benchmark
+    public Object getEmojiForWeatherCode(WeatherId weatherId) throws Throwable {
+        return EMOJI.invoke(weatherId.value);
+    }
+}
@@ -0,0 +1,43 @@
+package weatherbench;
+
+import java.lang.invoke.MethodHandle;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * The JSON extraction behind fetchWeatherFromAPI: bytes of a recorded /weather
+ * response to WeatherData, split into the org.json tree build and the field walk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WeatherParseBenchmark {
+    private static final MethodHandle PARSE_WEATHER =
+        AppAccess.method("WeatherStation", "parseWeather", JSONObject.class);
+
+    private byte[] payload;
+    private JSONObject tree;
+
+    @Setup
+    public void setup() {
+        payload = Fixtures.load("weather.json");
+        tree = new JSONObject(new String(payload, StandardCharsets.UTF_8));
+    }
+
+    /** What a cache miss pays after the body arrives. */
+    @Benchmark
+    public Object bytesToWeatherData() throws Throwable {
+        return PARSE_WEATHER.invoke(new JSONObject(new String(payload, StandardCharsets.UTF_8)));
+    }
+
+    /** Field extraction alone, from an already built tree. */
+    @Benchmark
+    public Object extractFields() throws Throwable {
+        return PARSE_WEATHER.invoke(tree);
+    }
+}